@@ -9,6 +9,9 @@ import java.nio.file.Paths;
 
 public class Main {
     public static void main(String[] args) throws IOException {
+        if (System.getProperty(HttpTaskServer.NODELAY_PROPERTY) == null) {
+            System.setProperty(HttpTaskServer.NODELAY_PROPERTY, "true");
+        }
         checkTaskServer();
     }
 
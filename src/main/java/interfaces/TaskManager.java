@@ -1,10 +1,15 @@
 package interfaces;
 
+import enums.TaskStatus;
+import enums.TaskType;
 import models.Epic;
 import models.Subtask;
 import models.Task;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface TaskManager {
     List<Task> getAllTasks();
@@ -44,4 +49,81 @@ public interface TaskManager {
     void updateEpic(Epic epic);
 
     List<Subtask> getEpicSubtasks(int epicId);
+
+    /**
+     * Batch operations dispatch items by task type and validate the whole batch
+     * before changing anything: either every item is applied or a
+     * {@link exceptions.ValidateException} is thrown and nothing is.
+     * Subtasks may only refer to epics that already exist.
+     */
+    List<Integer> addAll(List<? extends Task> batch);
+
+    void updateAll(List<? extends Task> batch);
+
+    /**
+     * Paged reads return up to {@code limit} items with ids greater than {@code afterId},
+     * in id order; the id of the last item is the cursor for the next page.
+     */
+    List<Task> getTasks(int afterId, int limit);
+
+    List<Subtask> getSubtasks(int afterId, int limit);
+
+    List<Epic> getEpics(int afterId, int limit);
+
+    List<Subtask> getEpicSubtasks(int epicId, int afterId, int limit);
+
+    Stream<Task> streamTasks();
+
+    Stream<Subtask> streamSubtasks();
+
+    Stream<Epic> streamEpics();
+
+    Stream<Subtask> streamEpicSubtasks(int epicId);
+
+    List<Task> getTasksByStatus(TaskStatus status);
+
+    List<Subtask> getSubtasksByStatus(TaskStatus status);
+
+    List<Epic> getEpicsByStatus(TaskStatus status);
+
+    /**
+     * Tasks and subtasks whose [startTime, endTime) intersects [from, to), by start time.
+     */
+    List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Tasks and subtasks by start time, unscheduled ones last, ties by id.
+     * The collection is a snapshot that later changes do not affect.
+     */
+    Collection<Task> getPrioritizedTasks();
+
+    /**
+     * Page of prioritized tasks after the start time and id of the last task
+     * of the previous page; {@code afterStart} is {@code null} for an
+     * unscheduled one.
+     */
+    List<Task> getPrioritizedTasks(LocalDateTime afterStart, int afterId, int limit);
+
+    Stream<Task> streamPrioritizedTasks();
+
+    /**
+     * Versions of the collections; each one moves on every change of its
+     * tasks. Together with {@link #getEpoch()} they identify a state.
+     */
+    long getTasksVersion();
+
+    long getSubtasksVersion();
+
+    long getEpicsVersion();
+
+    /**
+     * Version of a stored task of the given type, or -1 if there is none.
+     */
+    long getVersion(TaskType type, int id);
+
+    /**
+     * Versions start over with every manager, also after a restart; the epoch
+     * is random, so versions of different managers are told apart.
+     */
+    long getEpoch();
 }
@@ -1,25 +1,175 @@
 package models;
 
+import com.google.gson.annotations.JsonAdapter;
+import enums.TaskStatus;
 import enums.TaskType;
+import utils.IntMap;
+import utils.IntSet;
+import utils.adapter.IntSetAdapter;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Objects;
+import java.util.TreeMap;
 
 public class Epic extends Task {
-    private final ArrayList<Integer> subtasks = new ArrayList<>();
+    @JsonAdapter(IntSetAdapter.class)
+    private final IntSet subtasks;
 
     private LocalDateTime endTime;
 
+    // не сериализуется, восстанавливается из подзадач при загрузке
+    private transient Summary summary;
+
     public Epic(String name, String description) {
         super(name, description);
         this.taskType = TaskType.EPIC;
+        this.subtasks = new IntSet();
+    }
+
+    private Epic(Epic source) {
+        super(source.name, source.description, source.duration, source.startTime);
+        this.id = source.id;
+        this.taskStatus = source.taskStatus;
+        this.taskType = TaskType.EPIC;
+        this.subtasks = new IntSet(source.subtasks);
+        this.endTime = source.endTime;
+        this.summary = source.summary;
+        setVersion(source.getVersion());
+    }
+
+    /**
+     * Copy to be changed in place of this epic, which stays as readers saw it.
+     * The aggregates move over to the copy, so this epic must not be synced
+     * any more. Costs O(number of subtasks).
+     */
+    public Epic copy() {
+        return new Epic(this);
     }
 
-    public ArrayList<Integer> getSubtasks() {
+    public IntSet getSubtasks() {
         return subtasks;
     }
 
+    public void syncSubtask(Subtask subtask) {
+        if (summary().put(subtask)) {
+            subtasks.add(subtask.getId());
+        }
+        refresh();
+    }
+
+    public void syncSubtasks(Collection<Subtask> batch) {
+        for (Subtask subtask : batch) {
+            if (summary().put(subtask)) {
+                subtasks.add(subtask.getId());
+            }
+        }
+        refresh();
+    }
+
+    public void removeSubtask(int subtaskId) {
+        if (summary().remove(subtaskId)) {
+            subtasks.remove(subtaskId);
+        }
+        refresh();
+    }
+
+    public void clearSubtasks() {
+        subtasks.clear();
+        summary = null;
+        refresh();
+    }
+
+    private Summary summary() {
+        if (summary == null) {
+            summary = new Summary();
+        }
+        return summary;
+    }
+
+    private void refresh() {
+        Summary current = summary();
+        int size = current.snapshots.size();
+        if (size == 0) {
+            taskStatus = TaskStatus.NEW;
+            startTime = null;
+            endTime = null;
+            duration = null;
+            return;
+        }
+        startTime = current.starts.isEmpty() ? null : current.starts.firstKey();
+        endTime = current.ends.isEmpty() ? null : current.ends.lastKey();
+        duration = current.duration;
+        if (current.statuses[TaskStatus.NEW.ordinal()] == size) {
+            taskStatus = TaskStatus.NEW;
+        } else if (current.statuses[TaskStatus.DONE.ordinal()] == size) {
+            taskStatus = TaskStatus.DONE;
+        } else {
+            taskStatus = TaskStatus.IN_PROGRESS;
+        }
+    }
+
+    /**
+     * Counters over the subtasks of the epic. Each subtask's contribution is
+     * remembered, so an update or a delete is applied without rescanning.
+     */
+    private static class Summary {
+        private final IntMap<Snapshot> snapshots = new IntMap<>();
+        private final int[] statuses = new int[TaskStatus.values().length];
+        private final TreeMap<LocalDateTime, Integer> starts = new TreeMap<>();
+        private final TreeMap<LocalDateTime, Integer> ends = new TreeMap<>();
+        private Duration duration = Duration.ZERO;
+
+        private boolean put(Subtask subtask) {
+            Snapshot previous = snapshots.put(subtask.getId(), new Snapshot(subtask));
+            if (previous != null) {
+                apply(previous, -1);
+            }
+            apply(snapshots.get(subtask.getId()), 1);
+            return previous == null;
+        }
+
+        private boolean remove(int subtaskId) {
+            Snapshot previous = snapshots.remove(subtaskId);
+            if (previous == null) {
+                return false;
+            }
+            apply(previous, -1);
+            return true;
+        }
+
+        private void apply(Snapshot snapshot, int sign) {
+            statuses[snapshot.status.ordinal()] += sign;
+            if (snapshot.duration != null) {
+                duration = sign > 0 ? duration.plus(snapshot.duration) : duration.minus(snapshot.duration);
+            }
+            count(starts, snapshot.start, sign);
+            count(ends, snapshot.end, sign);
+        }
+
+        private static void count(TreeMap<LocalDateTime, Integer> counter, LocalDateTime time, int sign) {
+            if (time != null) {
+                counter.merge(time, sign, (a, b) -> a + b == 0 ? null : a + b);
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final TaskStatus status;
+        private final Duration duration;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        private Snapshot(Subtask subtask) {
+            // подзадача без статуса не NEW и не DONE, как и раньше
+            this.status = subtask.getTaskStatus() == null ? TaskStatus.IN_PROGRESS : subtask.getTaskStatus();
+            this.duration = subtask.getDuration();
+            this.start = subtask.getStartTime();
+            this.end = subtask.getEndTime();
+        }
+    }
+
     @Override
     public LocalDateTime getEndTime() {
         return endTime;
@@ -16,6 +16,7 @@ public class Task {
     protected String description;
     protected Duration duration;
     protected LocalDateTime startTime;
+    private transient long version;
 
     public Task(String name, String description) {
         this.taskStatus = TaskStatus.NEW;
@@ -90,6 +91,17 @@ public class Task {
         this.description = description;
     }
 
+    /**
+     * Set by the manager on every change of the stored task; not serialized.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public TaskType getTaskType() {
         return taskType;
     }
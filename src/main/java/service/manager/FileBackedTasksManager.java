@@ -1,23 +1,47 @@
 package service.manager;
 
+import enums.PersistenceMode;
+import enums.SnapshotFormat;
 import enums.TaskStatus;
 import enums.TaskType;
 import exceptions.ManagerSaveException;
-import interfaces.HistoryManager;
 import interfaces.TaskManager;
 import models.Epic;
 import models.Subtask;
 import models.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import service.storage.BinarySnapshot;
+import service.storage.BlockIdAllocator;
+import service.storage.CompactionPolicy;
+import service.storage.CsvFields;
+import service.storage.CsvSnapshotReader;
+import service.storage.FlushPolicy;
+import service.storage.StorageOptions;
+import service.storage.TaskJournal;
+import service.storage.TaskSegments;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,20 +50,110 @@ public class FileBackedTasksManager extends InMemoryTaskManager implements TaskM
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
 
     private final String file;
-    private static final String FIRST_LINE = "id,type,name,status,description,epic,startTime,duration,endTime\n";
-    private static final Pattern pattern = Pattern.compile("-?\\d+(\\.\\d+)?");
+    private final StorageOptions options;
+    private final Object compactionLock = new Object();
+    // чтения идут параллельно под read-lock, изменения — под write-lock;
+    // просмотр по id меняет историю и поэтому ещё берёт historyLock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object historyLock = new Object();
+    private volatile TaskJournal journal;
+    private final TaskSegments segments;
+    private final BlockIdAllocator ids;
+    private ScheduledExecutorService compactor;
+    // просмотры не пишутся на диск сразу, история сохраняется вместе со следующим изменением
+    private boolean historyDirty;
+
+    /**
+     * What a change did, in the terms the storage needs: the journal records
+     * it, segmented storage marks the segments it touched.
+     */
+    private interface Changes {
+        void put(Task task);
+
+        void delete(Task task);
+
+        void clear(TaskType type);
+    }
+
+    private final Changes journalChanges = new Changes() {
+        @Override
+        public void put(Task task) {
+            journal.put(FileBackedTasksManager.this.toString(task));
+        }
+
+        @Override
+        public void delete(Task task) {
+            journal.delete(task.getId());
+        }
+
+        @Override
+        public void clear(TaskType type) {
+            journal.clear(type);
+        }
+    };
+
+    private final Changes segmentChanges = new Changes() {
+        @Override
+        public void put(Task task) {
+            segments.markDirty(task.getId());
+            if (task.getTaskType() == TaskType.SUBTASK) {
+                // статус и время эпика хранятся в его сегменте
+                segments.markDirty(((Subtask) task).getEpicId());
+            }
+        }
+
+        @Override
+        public void delete(Task task) {
+            put(task);
+            historyDirty = true;
+        }
+
+        @Override
+        public void clear(TaskType type) {
+            segments.markStored();
+            historyDirty = true;
+        }
+    };
 
     public FileBackedTasksManager(String file) {
+        this(file, StorageOptions.defaults());
+    }
+
+    /**
+     * In {@link PersistenceMode#JOURNAL} mode every change is appended to
+     * {@code <file>.log} instead of rewriting the whole file; the log is folded
+     * into the file by {@link #checkpoint()}, {@link #compact()} and on every load.
+     */
+    public FileBackedTasksManager(String file, PersistenceMode mode) {
+        this(file, StorageOptions.defaults().withMode(mode));
+    }
+
+    /**
+     * With a flush policy other than {@link FlushPolicy#sync()} journal records
+     * are written behind by a background thread and {@link #sync()} tells when
+     * they are on disk. A journal grown past the compaction thresholds is
+     * folded into a new snapshot in the background, see {@link #compact()}.
+     * <p>
+     * In {@link PersistenceMode#SEGMENTED} mode tasks are kept in
+     * {@code <file>.segments}, one CSV file per range of ids, and a change
+     * rewrites only the segments it touched, see {@link TaskSegments}.
+     */
+    public FileBackedTasksManager(String file, StorageOptions options) {
         this.file = file;
+        this.options = options;
+        this.segments = options.getMode() == PersistenceMode.SEGMENTED
+                ? new TaskSegments(Paths.get(file + ".segments"), options.getSegmentSize())
+                : null;
+        this.ids = new BlockIdAllocator(Paths.get(file + ".ids"), options.getIdBlockSize());
     }
 
     private String toString(Task task) {
         StringJoiner joiner = new StringJoiner(",");
         joiner.add(String.valueOf(task.getId()))
                 .add(String.valueOf(task.getTaskType()))
-                .add(String.valueOf(task.getName()))
+                .add(CsvFields.escape(String.valueOf(task.getName())))
                 .add(String.valueOf(task.getTaskStatus()))
-                .add(String.valueOf(task.getDescription()));
+                .add(CsvFields.escape(String.valueOf(task.getDescription())));
         if (task instanceof Subtask) {
             joiner.add(String.valueOf(((Subtask) task).getEpicId()));
         }
@@ -52,7 +166,10 @@ public class FileBackedTasksManager extends InMemoryTaskManager implements TaskM
     }
 
     private Task fromString(String value) {
-        String[] line = value.split(",");
+        // пустое описание в конце строки — тоже поле
+        String[] line = value.split(",", -1);
+        line[2] = CsvFields.unescape(line[2]);
+        line[4] = CsvFields.unescape(line[4]);
         switch (TaskType.valueOf(line[1])) {
             case TASK:
                 Task task = new Task(line[2], line[4]);
@@ -91,8 +208,7 @@ public class FileBackedTasksManager extends InMemoryTaskManager implements TaskM
         }
     }
 
-    private static String historyToString(HistoryManager manager) {
-        List<Task> history = manager.getHistory();
+    private static String historyToString(List<Task> history) {
         StringBuilder sb = new StringBuilder();
         for (Task task : history) {
             sb.append(task.getId());
@@ -101,20 +217,6 @@ public class FileBackedTasksManager extends InMemoryTaskManager implements TaskM
         return sb.toString();
     }
 
-    private static List<Integer> historyFromString(String value) {
-        List<Integer> historyIds = new ArrayList<>();
-        if (value == null) {
-            return historyIds;
-        }
-        String[] elements = value.split(",");
-        if (pattern.matcher(elements[0]).matches()) {
-            for (String el : elements) {
-                historyIds.add(Integer.parseInt(el));
-            }
-        }
-        return historyIds;
-    }
-
     public void createEmptyFile(String path) throws ManagerSaveException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(path, false))) {
             writer.write("");
@@ -125,172 +227,723 @@ public class FileBackedTasksManager extends InMemoryTaskManager implements TaskM
     }
 
     private void save() throws ManagerSaveException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
-            List<Task> tasksToWrite = Stream.of(tasks.values(), epics.values(), subtasks.values())
-                    .flatMap(Collection::stream)
-                    .sorted(Comparator.comparing(Task::getId))
-                    .collect(Collectors.toList());
-
-            writer.write(FIRST_LINE);
-            for (Task task : tasksToWrite) {
-                writer.write(toString(task) + "\n");
-            }
-            writer.newLine();
-            writer.write(historyToString(historyManager));
+        save(options.getFlushPolicy().isForce());
+    }
 
+    private void save(boolean force) throws ManagerSaveException {
+        try {
+            if (segments != null) {
+                saveSegments(force);
+                return;
+            }
+            replaceSnapshot(Paths.get(file), Stream.of(tasks.values(), epics.values(), subtasks.values()),
+                    historyManager.getHistory(), options.getFormat(), force);
+            historyDirty = false;
         } catch (IOException e) {
             log.error("Exception: ", e);
             throw new ManagerSaveException("Ошибка записи в файл");
         }
     }
 
+    private void saveSegments(boolean force) throws IOException {
+        segments.createDirectory();
+        for (int segment : segments.dirty()) {
+            List<Task> segmentTasks = new ArrayList<>();
+            for (int id = segments.firstId(segment); id <= segments.lastId(segment); id++) {
+                Task task = findTask(id);
+                if (task != null) {
+                    segmentTasks.add(task);
+                }
+            }
+            if (segmentTasks.isEmpty()) {
+                segments.removed(segment);
+            } else {
+                replaceSnapshot(segments.path(segment), Stream.of(segmentTasks), List.of(),
+                        SnapshotFormat.CSV, force);
+                segments.written(segment);
+            }
+        }
+        if (historyDirty) {
+            replaceSnapshot(segments.historyPath(), Stream.empty(), historyManager.getHistory(),
+                    SnapshotFormat.CSV, force);
+            historyDirty = false;
+        }
+    }
+
+    /**
+     * Writes the snapshot to {@code <target>.tmp} and renames it over the target
+     * in one atomic step, so a crash leaves either the old snapshot or the new
+     * one. With {@code force} the new snapshot is on disk before the rename.
+     */
+    private void replaceSnapshot(Path target, Stream<Collection<? extends Task>> stores, List<Task> history,
+                                 SnapshotFormat format, boolean force) throws IOException {
+        Path temp = Paths.get(target + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            writeSnapshot(out, stores, history, format);
+            out.flush();
+            if (force) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeSnapshot(OutputStream out, Stream<Collection<? extends Task>> stores,
+                               List<Task> history, SnapshotFormat format) throws IOException {
+        List<Task> tasksToWrite = stores
+                .flatMap(Collection::stream)
+                .sorted(Comparator.comparing(Task::getId))
+                .collect(Collectors.toList());
+
+        if (format == SnapshotFormat.BINARY) {
+            BinarySnapshot.write(out, tasksToWrite, history);
+            return;
+        }
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CsvFields.HEADER);
+        writer.newLine();
+        for (Task task : tasksToWrite) {
+            writer.write(toString(task) + "\n");
+        }
+        writer.newLine();
+        writer.write(historyToString(history));
+        writer.flush();
+    }
+
+    /**
+     * Folds the journal into a new snapshot without holding up writers for
+     * longer than it takes to grab the current lists and rotate the log:
+     * <ol>
+     * <li>under the write lock the lists and history are captured and the
+     * log is moved aside to {@code <file>.log.1};</li>
+     * <li>the snapshot is written to {@code <file>.tmp}, forced to disk and
+     * renamed over the file in one atomic step;</li>
+     * <li>the rotated log is deleted.</li>
+     * </ol>
+     * A crash at any point leaves a snapshot plus logs that replay to the
+     * same state, since journal records are idempotent.
+     */
+    public void compact() throws ManagerSaveException {
+        synchronized (compactionLock) {
+            List<Task> taskList;
+            List<Subtask> subtaskList;
+            List<Epic> epicList;
+            List<Task> history;
+            lock.writeLock().lock();
+            try {
+                if (journal == null) {
+                    return;
+                }
+                taskList = tasksView.get();
+                subtaskList = subtasksView.get();
+                epicList = epicsView.get();
+                history = historyManager.getHistory();
+                journal.rotate(rotatedJournalPath());
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                replaceSnapshot(Paths.get(file), Stream.of(taskList, epicList, subtaskList), history,
+                        options.getFormat(), true);
+                Files.deleteIfExists(rotatedJournalPath());
+            } catch (IOException e) {
+                log.error("Exception: ", e);
+                throw new ManagerSaveException("Ошибка сжатия журнала");
+            }
+            log.info("Журнал сжат в снимок: {} задач", taskList.size() + subtaskList.size() + epicList.size());
+        }
+    }
+
+    private void compactIfDue() {
+        TaskJournal current = journal;
+        if (current != null && options.getCompaction().isDue(current.bytes(), current.records())) {
+            try {
+                compact();
+            } catch (ManagerSaveException e) {
+                log.error("Фоновое сжатие журнала не удалось: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void startCompactor() {
+        CompactionPolicy compaction = options.getCompaction();
+        if (!compaction.isEnabled()) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfDue, compaction.getCheckIntervalMillis(),
+                compaction.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a full snapshot and empties the journal. The snapshot is forced to
+     * disk before the journal is emptied, and a compaction in progress is
+     * waited for, so its older snapshot cannot replace this one.
+     */
+    public void checkpoint() throws ManagerSaveException {
+        synchronized (compactionLock) {
+            lock.writeLock().lock();
+            try {
+                if (segments != null) {
+                    Stream.of(tasks.keys(), subtasks.keys(), epics.keys())
+                            .flatMapToInt(Arrays::stream)
+                            .forEach(segments::markDirty);
+                    segments.markStored();
+                    historyDirty = true;
+                }
+                save(journal != null || options.getFlushPolicy().isForce());
+                if (journal != null) {
+                    journal.truncate();
+                    try {
+                        Files.deleteIfExists(rotatedJournalPath());
+                    } catch (IOException e) {
+                        log.error("Exception: ", e);
+                        throw new ManagerSaveException("Ошибка записи в журнал");
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes views recorded since the last change. Reads never touch the disk
+     * on their own, so call this (or {@link #close()}) before shutting down.
+     */
+    public void flush() throws ManagerSaveException {
+        write(() -> {
+            if (journal != null) {
+                journal.flush();
+            } else if (historyDirty) {
+                save();
+            }
+        });
+    }
+
+    /**
+     * Completes when every change made so far is written to disk.
+     */
+    public CompletableFuture<Void> sync() {
+        return journal == null ? CompletableFuture.completedFuture(null) : journal.whenWritten();
+    }
+
+    public void close() throws ManagerSaveException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        write(() -> {
+            flush();
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        });
+    }
+
+    private void touched(Task task) {
+        if (task == null) {
+            return;
+        }
+        if (journal == null) {
+            historyDirty = true;
+        } else {
+            journal.touch(task.getId());
+        }
+    }
+
+    private Path journalPath() {
+        return Paths.get(file + ".log");
+    }
+
+    private Path rotatedJournalPath() {
+        return Paths.get(file + ".log.1");
+    }
+
+    private void persist(Consumer<Changes> change) {
+        if (journal != null) {
+            change.accept(journalChanges);
+            journal.commit();
+        } else if (segments != null) {
+            change.accept(segmentChanges);
+            save();
+        } else {
+            save();
+        }
+    }
+
     public static FileBackedTasksManager loadFromFile(String file) throws ManagerSaveException {
-        FileBackedTasksManager manager = new FileBackedTasksManager(file);
-        LinkedList<String> lines = new LinkedList<>();
-        try (BufferedReader fileReader = new BufferedReader(new FileReader(manager.file, StandardCharsets.UTF_8))) {
-            while (fileReader.ready()) {
-                lines.add(fileReader.readLine());
+        return loadFromFile(file, StorageOptions.defaults());
+    }
+
+    public static FileBackedTasksManager loadFromFile(String file, PersistenceMode mode) throws ManagerSaveException {
+        return loadFromFile(file, StorageOptions.defaults().withMode(mode));
+    }
+
+    public static FileBackedTasksManager loadFromFile(String file, StorageOptions options)
+            throws ManagerSaveException {
+        FileBackedTasksManager manager = new FileBackedTasksManager(file, options);
+        boolean segmented = manager.segments != null && manager.segments.exists();
+        List<Integer> historyFromString;
+        try {
+            if (segmented) {
+                for (Path segment : manager.segments.list()) {
+                    manager.readSnapshot(segment);
+                }
+                Path history = manager.segments.historyPath();
+                historyFromString = Files.exists(history) ? manager.readSnapshot(history) : List.of();
+            } else {
+                historyFromString = manager.readSnapshot(Paths.get(manager.file));
             }
         } catch (IOException e) {
             log.error("Exception: ", e);
             throw new ManagerSaveException("Произошла ошибка во время чтения файла.");
         }
-
-        String history = null;
-        if (!lines.isEmpty()) {
-            lines.removeFirst();
-            history = lines.removeLast();
-            lines.removeLast();
-        }
-        for (String task : lines) {
-            Task taskFromString = manager.fromString(task);
-            switch (taskFromString.getTaskType()) {
-                case TASK:
-                    manager.tasks.put(taskFromString.getId(), taskFromString);
-                    break;
-                case SUBTASK:
-                    manager.subtasks.put(taskFromString.getId(), (Subtask) taskFromString);
-                    break;
-                case EPIC:
-                    manager.epics.put(taskFromString.getId(), (Epic) taskFromString);
-                    break;
-            }
-        }
-        List<Integer> historyFromString = historyFromString(history);
         for (int taskId : historyFromString) {
-            if (manager.tasks.containsKey(taskId))
-                manager.historyManager.add(manager.tasks.get(taskId));
-            else if (manager.subtasks.containsKey(taskId))
-                manager.historyManager.add(manager.subtasks.get(taskId));
-            else if (manager.epics.containsKey(taskId))
-                manager.historyManager.add(manager.epics.get(taskId));
-            else {
+            Task task = manager.findTask(taskId);
+            if (task != null) {
+                manager.historyManager.add(task);
+            } else {
                 log.info("Задача с id= {} не найдена", taskId);
             }
         }
-        manager.setUniqueId();
+        if (options.getMode() == PersistenceMode.JOURNAL) {
+            manager.replayJournal();
+        }
+        manager.rebuildEpics();
+        // хранилище могло быть записано до того, как появился счётчик id
+        manager.ids.skipTo(manager.maxId());
+        if (options.getMode() == PersistenceMode.JOURNAL) {
+            manager.journal = new TaskJournal(manager.journalPath(), options.getFlushPolicy());
+            manager.checkpoint();
+            manager.startCompactor();
+        }
+        if (manager.segments != null && !segmented) {
+            // первая загрузка в сегментированном режиме: файл раскладывается по сегментам
+            manager.checkpoint();
+        }
         return manager;
     }
 
+    private List<Integer> readSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BinarySnapshot.headerLength());
+            channel.read(header, 0);
+            if (BinarySnapshot.isBinary(Arrays.copyOf(header.array(), header.position()))) {
+                return BinarySnapshot.read(new BufferedInputStream(Channels.newInputStream(channel)), channel.size(),
+                        this::restoreTask);
+            }
+            return CsvSnapshotReader.read(channel, this::restoreTask, options.getLoadParallelism());
+        }
+    }
 
-    private void setUniqueId() {
-        int size = tasks.size() + subtasks.size() + epics.size();
-        uniqueId.set(size);
+    private void replayJournal() {
+        // журнал, отложенный незавершённым сжатием, старше текущего
+        replayJournal(rotatedJournalPath());
+        replayJournal(journalPath());
+        // задачи из журнала заменяют объекты, на которые ссылается история
+        List<Task> history = historyManager.getHistory();
+        historyManager.clear();
+        for (Task viewed : history) {
+            Task task = findTask(viewed.getId());
+            if (task != null) {
+                historyManager.add(task);
+            }
+        }
+    }
+
+    private void replayJournal(Path path) {
+        TaskJournal.replay(path, new TaskJournal.Listener() {
+            @Override
+            public void put(String task) {
+                restoreTask(fromString(task));
+            }
+
+            @Override
+            public void delete(int id) {
+                discardTask(id);
+            }
+
+            @Override
+            public void clear(TaskType type) {
+                int[] ids;
+                switch (type) {
+                    case TASK:
+                        ids = tasks.keys();
+                        break;
+                    case SUBTASK:
+                        ids = subtasks.keys();
+                        break;
+                    default:
+                        int[] epicIds = epics.keys();
+                        int[] subtaskIds = subtasks.keys();
+                        ids = Arrays.copyOf(epicIds, epicIds.length + subtaskIds.length);
+                        System.arraycopy(subtaskIds, 0, ids, epicIds.length, subtaskIds.length);
+                        break;
+                }
+                for (int id : ids) {
+                    discardTask(id);
+                }
+            }
+
+            @Override
+            public void touch(int id) {
+                Task task = findTask(id);
+                if (task != null) {
+                    historyManager.add(task);
+                }
+            }
+        });
+    }
+
+    private Task findTask(int taskId) {
+        if (tasks.containsKey(taskId)) {
+            return tasks.get(taskId);
+        } else if (subtasks.containsKey(taskId)) {
+            return subtasks.get(taskId);
+        } else {
+            return epics.get(taskId);
+        }
+    }
+
+    private int maxId() {
+        return Stream.of(tasks.keys(), subtasks.keys(), epics.keys())
+                .flatMapToInt(Arrays::stream)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * Ids come from blocks reserved in {@code <file>.ids}, so an id is never
+     * reused, even after the task holding it was removed.
+     */
+    @Override
+    protected int nextId() {
+        return ids.next();
     }
 
     @Override
     public void deleteAllTasks() {
-        super.deleteAllTasks();
-        save();
+        write(() -> {
+            super.deleteAllTasks();
+            persist(changes -> changes.clear(TaskType.TASK));
+        });
     }
 
     @Override
     public void deleteAllSubtasks() {
-        super.deleteAllSubtasks();
-        save();
+        write(() -> {
+            super.deleteAllSubtasks();
+            persist(changes -> changes.clear(TaskType.SUBTASK));
+        });
     }
 
     @Override
     public void deleteAllEpics() {
-        super.deleteAllEpics();
-        save();
+        write(() -> {
+            super.deleteAllEpics();
+            persist(changes -> changes.clear(TaskType.EPIC));
+        });
     }
 
     @Override
     public Task getTaskById(int taskId) {
-        Task task = super.getTaskById(taskId);
-        save();
-        return task;
+        return viewed(() -> super.getTaskById(taskId));
     }
 
     @Override
     public Task getSubtaskById(int subtaskId) {
-        Task task = super.getSubtaskById(subtaskId);
-        save();
-        return task;
+        return viewed(() -> super.getSubtaskById(subtaskId));
     }
 
     @Override
     public Task getEpicById(int epicId) {
-        Task task = super.getEpicById(epicId);
-        save();
-        return task;
+        return viewed(() -> super.getEpicById(epicId));
     }
 
     @Override
     public void deleteTaskById(int taskId) {
-        super.deleteTaskById(taskId);
-        save();
+        write(() -> {
+            Task task = tasks.get(taskId);
+            super.deleteTaskById(taskId);
+            persist(changes -> deleted(changes, task));
+        });
     }
 
     @Override
     public void deleteSubtaskById(int subtaskId) {
-        super.deleteSubtaskById(subtaskId);
-        save();
+        write(() -> {
+            Subtask subtask = subtasks.get(subtaskId);
+            super.deleteSubtaskById(subtaskId);
+            persist(changes -> deleted(changes, subtask));
+        });
     }
 
     @Override
     public void deleteEpicById(int epicId) {
-        super.deleteEpicById(epicId);
-        save();
+        write(() -> {
+            Epic epic = epics.get(epicId);
+            List<Subtask> epicSubtasks = epic == null ? List.of() : getEpicSubtasks(epicId);
+            super.deleteEpicById(epicId);
+            persist(changes -> {
+                for (Subtask subtask : epicSubtasks) {
+                    changes.delete(subtask);
+                }
+                deleted(changes, epic);
+            });
+        });
+    }
+
+    private static void deleted(Changes changes, Task task) {
+        if (task != null) {
+            changes.delete(task);
+        }
     }
 
     @Override
     public Integer addTask(Task task) {
-        int taskId = super.addTask(task);
-        save();
-        return taskId;
+        return write(() -> {
+            int taskId = super.addTask(task);
+            persist(changes -> changes.put(task));
+            return taskId;
+        });
     }
 
     @Override
     public Integer addSubtask(Subtask subtask) {
-        int subtaskId = super.addSubtask(subtask);
-        save();
-        return subtaskId;
+        return write(() -> {
+            int subtaskId = super.addSubtask(subtask);
+            persist(changes -> changes.put(subtask));
+            return subtaskId;
+        });
     }
 
     @Override
     public Integer addEpic(Epic epic) {
-        int epicId = super.addEpic(epic);
-        save();
-        return epicId;
+        return write(() -> {
+            int epicId = super.addEpic(epic);
+            persist(changes -> changes.put(epic));
+            return epicId;
+        });
     }
 
     @Override
     public void updateTask(Task task) {
-        super.updateTask(task);
-        save();
+        write(() -> {
+            super.updateTask(task);
+            persist(changes -> changes.put(task));
+        });
     }
 
     @Override
     public void updateSubtask(Subtask subtask) {
-        super.updateSubtask(subtask);
-        save();
+        write(() -> {
+            super.updateSubtask(subtask);
+            persist(changes -> changes.put(subtask));
+        });
     }
 
     @Override
     public void updateEpic(Epic epic) {
-        super.updateEpic(epic);
-        save();
+        write(() -> {
+            super.updateEpic(epic);
+            persist(changes -> changes.put(epics.get(epic.getId())));
+        });
+    }
+
+    @Override
+    public List<Integer> addAll(List<? extends Task> batch) {
+        return write(() -> {
+            List<Integer> ids = super.addAll(batch);
+            persist(changes -> {
+                for (Task task : batch) {
+                    changes.put(task);
+                }
+            });
+            return ids;
+        });
+    }
+
+    @Override
+    public void updateAll(List<? extends Task> batch) {
+        write(() -> {
+            super.updateAll(batch);
+            persist(changes -> {
+                for (Task task : batch) {
+                    changes.put(findTask(task.getId()));
+                }
+            });
+        });
+    }
+
+    @Override
+    public List<Task> getAllTasks() {
+        return read(() -> super.getAllTasks());
+    }
+
+    @Override
+    public List<Subtask> getAllSubtasks() {
+        return read(() -> super.getAllSubtasks());
+    }
+
+    @Override
+    public List<Epic> getAllEpics() {
+        return read(() -> super.getAllEpics());
+    }
+
+    @Override
+    public List<Subtask> getEpicSubtasks(int epicId) {
+        return read(() -> super.getEpicSubtasks(epicId));
+    }
+
+    @Override
+    public List<Task> getTasks(int afterId, int limit) {
+        return read(() -> super.getTasks(afterId, limit));
+    }
+
+    @Override
+    public List<Subtask> getSubtasks(int afterId, int limit) {
+        return read(() -> super.getSubtasks(afterId, limit));
+    }
+
+    @Override
+    public List<Epic> getEpics(int afterId, int limit) {
+        return read(() -> super.getEpics(afterId, limit));
+    }
+
+    @Override
+    public List<Subtask> getEpicSubtasks(int epicId, int afterId, int limit) {
+        return read(() -> super.getEpicSubtasks(epicId, afterId, limit));
+    }
+
+    @Override
+    public Stream<Task> streamTasks() {
+        return read(() -> super.streamTasks());
+    }
+
+    @Override
+    public Stream<Subtask> streamSubtasks() {
+        return read(() -> super.streamSubtasks());
+    }
+
+    @Override
+    public Stream<Epic> streamEpics() {
+        return read(() -> super.streamEpics());
+    }
+
+    /**
+     * Subtasks are looked up while the lock is held, not when the stream is consumed.
+     */
+    @Override
+    public Stream<Subtask> streamEpicSubtasks(int epicId) {
+        return read(() -> super.getEpicSubtasks(epicId).stream());
+    }
+
+    @Override
+    public List<Task> getTasksByStatus(TaskStatus status) {
+        return read(() -> super.getTasksByStatus(status));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByStatus(TaskStatus status) {
+        return read(() -> super.getSubtasksByStatus(status));
+    }
+
+    @Override
+    public List<Epic> getEpicsByStatus(TaskStatus status) {
+        return read(() -> super.getEpicsByStatus(status));
+    }
+
+    @Override
+    public List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        return read(() -> super.getTasksBetween(from, to));
+    }
+
+    @Override
+    public Collection<Task> getPrioritizedTasks() {
+        return read(() -> super.getPrioritizedTasks());
+    }
+
+    @Override
+    public List<Task> getPrioritizedTasks(LocalDateTime afterStart, int afterId, int limit) {
+        return read(() -> super.getPrioritizedTasks(afterStart, afterId, limit));
+    }
+
+    @Override
+    public Stream<Task> streamPrioritizedTasks() {
+        return read(() -> super.streamPrioritizedTasks());
+    }
+
+    @Override
+    public long getVersion(TaskType type, int id) {
+        return read(() -> super.getVersion(type, id));
+    }
+
+    public List<Task> getHistory() {
+        return read(() -> {
+            synchronized (historyLock) {
+                return historyManager.getHistory();
+            }
+        });
+    }
+
+    /**
+     * Runs the action under the read lock, so no change happens meanwhile
+     * while other reads go on. The action must not change the manager.
+     */
+    public <T> T locked(Supplier<T> action) {
+        return read(action);
+    }
+
+    private <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> action) {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A read by id records a view: lookups run side by side under the read
+     * lock, history and journal are updated one at a time.
+     */
+    private Task viewed(Supplier<Task> lookup) {
+        return read(() -> {
+            synchronized (historyLock) {
+                Task task = lookup.get();
+                touched(task);
+                return task;
+            }
+        });
     }
 }
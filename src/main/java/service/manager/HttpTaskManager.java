@@ -29,6 +29,7 @@ public class HttpTaskManager extends InMemoryTaskManager implements TaskManager
 
     private final KVTaskClient httpClient;
     private static final String historyHeader = "history";
+    private boolean historyDirty;
 
     public HttpTaskManager(String url) {
         httpClient = new KVTaskClient(url);
@@ -47,6 +48,23 @@ public class HttpTaskManager extends InMemoryTaskManager implements TaskManager
         if (history.size() > 0) {
             httpClient.put(historyHeader, gson.toJson(history));
         }
+        historyDirty = false;
+    }
+
+    /**
+     * Sends views recorded since the last change; only the history key is written.
+     * Reads never reach the KV server on their own, so call this (or
+     * {@link #close()}) before shutting down.
+     */
+    public void flush() {
+        if (historyDirty) {
+            httpClient.put(historyHeader, gson.toJson(historyManager.getHistory()));
+            historyDirty = false;
+        }
+    }
+
+    public void close() {
+        flush();
     }
 
     public void loadFromServer() {
@@ -56,20 +74,19 @@ public class HttpTaskManager extends InMemoryTaskManager implements TaskManager
             Task taskFromString = gson.fromJson(response, Task.class);
             switch (taskFromString.getTaskType()) {
                 case TASK:
-                    tasks.put(taskFromString.getId(), taskFromString);
+                    restoreTask(taskFromString);
                     break;
                 case SUBTASK:
-                    Subtask subtask = gson.fromJson(response, Subtask.class);
-                    subtasks.put(subtask.getId(), subtask);
+                    restoreTask(gson.fromJson(response, Subtask.class));
                     break;
                 case EPIC:
-                    Epic epic = gson.fromJson(response, Epic.class);
-                    epics.put(epic.getId(), epic);
+                    restoreTask(gson.fromJson(response, Epic.class));
                     break;
             }
             initialKey++;
             response = httpClient.load(String.valueOf(initialKey));
         }
+        rebuildEpics();
         String history = httpClient.load(historyHeader);
         if (history != null) {
             Type historyIds = new TypeToken<ArrayList<? extends Task>>() {
@@ -82,9 +99,7 @@ public class HttpTaskManager extends InMemoryTaskManager implements TaskManager
     }
 
     public void clearData() {
-        tasks.clear();
-        subtasks.clear();
-        epics.clear();
+        clearStores();
         historyManager.clear();
         httpClient.clear();
     }
@@ -110,21 +125,21 @@ public class HttpTaskManager extends InMemoryTaskManager implements TaskManager
     @Override
     public Task getTaskById(int taskId) {
         Task task = super.getTaskById(taskId);
-        save();
+        historyDirty |= task != null;
         return task;
     }
 
     @Override
     public Task getSubtaskById(int subtaskId) {
         Task task = super.getSubtaskById(subtaskId);
-        save();
+        historyDirty |= task != null;
         return task;
     }
 
     @Override
     public Task getEpicById(int epicId) {
         Task task = super.getEpicById(epicId);
-        save();
+        historyDirty |= task != null;
         return task;
     }
 
@@ -184,4 +199,17 @@ public class HttpTaskManager extends InMemoryTaskManager implements TaskManager
         super.updateEpic(epic);
         save();
     }
+
+    @Override
+    public List<Integer> addAll(List<? extends Task> batch) {
+        List<Integer> ids = super.addAll(batch);
+        save();
+        return ids;
+    }
+
+    @Override
+    public void updateAll(List<? extends Task> batch) {
+        super.updateAll(batch);
+        save();
+    }
 }
@@ -1,6 +1,7 @@
 package service.manager;
 
 import enums.TaskStatus;
+import enums.TaskType;
 import exceptions.ValidateException;
 import interfaces.HistoryManager;
 import interfaces.TaskManager;
@@ -9,74 +10,96 @@ import models.Subtask;
 import models.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import utils.IntMap;
+import utils.IntSet;
+import utils.IntervalTree;
+import utils.PrioritizedIndex;
+import utils.SnapshotView;
+import utils.StatusIndex;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 
 public class InMemoryTaskManager implements TaskManager {
     private static final Logger log = LoggerFactory.getLogger(InMemoryTaskManager.class);
-    protected final Map<Integer, Task> tasks = new TreeMap<>();
-    protected final Map<Integer, Subtask> subtasks = new TreeMap<>();
-    protected final Map<Integer, Epic> epics = new TreeMap<>();
+    protected final IntMap<Task> tasks = new IntMap<>();
+    protected final IntMap<Subtask> subtasks = new IntMap<>();
+    protected final IntMap<Epic> epics = new IntMap<>();
+    protected final IntervalTree schedule = new IntervalTree();
+    protected final PrioritizedIndex prioritized = new PrioritizedIndex();
     protected final AtomicInteger uniqueId = new AtomicInteger();
+    protected final SnapshotView<Task> tasksView = new SnapshotView<>(tasks.values());
+    protected final SnapshotView<Subtask> subtasksView = new SnapshotView<>(subtasks.values());
+    protected final SnapshotView<Epic> epicsView = new SnapshotView<>(epics.values());
+    protected final SnapshotView<Task> prioritizedView = new SnapshotView<>(prioritized.view());
+    protected final StatusIndex taskStatuses = new StatusIndex();
+    protected final StatusIndex subtaskStatuses = new StatusIndex();
+    protected final StatusIndex epicStatuses = new StatusIndex();
     private static final String ERROR = "It is not allowed to start 2 tasks simultaneously";
-
-    protected SortedSet<Map.Entry<Integer, ? extends Task>> sortedset = new TreeSet<>(
-            Comparator.comparing(e -> e.getValue().getStartTime(),
-                    Comparator.nullsLast(Comparator.naturalOrder())));
+    private final long epoch = ThreadLocalRandom.current().nextLong() >>> 1;
+    private long clock;
 
     public final HistoryManager historyManager = new InMemoryHistoryManager();
 
     @Override
     public List<Task> getAllTasks() {
-        return new ArrayList<>(tasks.values());
+        return tasksView.get();
     }
 
     @Override
     public List<Subtask> getAllSubtasks() {
-        return new ArrayList<>(subtasks.values());
+        return subtasksView.get();
     }
 
     @Override
     public List<Epic> getAllEpics() {
-        return new ArrayList<>(epics.values());
+        return epicsView.get();
     }
 
     @Override
     public void deleteAllTasks() {
-        for (int taskId : tasks.keySet()) {
+        for (int taskId : tasks.keys()) {
             historyManager.remove(taskId);
+            unindex(taskId);
         }
         tasks.clear();
+        tasksView.invalidate();
     }
 
     @Override
     public void deleteAllSubtasks() {
-        for (Epic epic : epics.values()) {
-            List<Integer> epicSubtasks = epic.getSubtasks();
-            for (int subtaskId : epicSubtasks) {
+        for (int epicId : epics.keys()) {
+            Epic epic = writableEpic(epicId);
+            for (int subtaskId : epic.getSubtasks().sortedArray()) {
                 historyManager.remove(subtaskId);
+                unindex(subtaskId);
             }
-            epicSubtasks.clear();
-            syncEpicStatus(epic);
+            epic.clearSubtasks();
+            syncEpic(epic);
         }
         subtasks.clear();
+        subtasksView.invalidate();
     }
 
     @Override
     public void deleteAllEpics() {
-        for (int taskId : epics.keySet()) {
+        for (int taskId : epics.keys()) {
             historyManager.remove(taskId);
         }
         epics.clear();
+        epicStatuses.clear();
 
-        for (int taskId : subtasks.keySet()) {
+        for (int taskId : subtasks.keys()) {
             historyManager.remove(taskId);
+            unindex(taskId);
         }
         subtasks.clear();
+        epicsView.invalidate();
+        subtasksView.invalidate();
     }
 
     @Override
@@ -108,19 +131,24 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public void deleteTaskById(int taskId) {
-        tasks.remove(taskId);
+        if (tasks.remove(taskId) != null) {
+            tasksView.invalidate();
+        }
         historyManager.remove(taskId);
+        unindex(taskId);
     }
 
     @Override
     public void deleteSubtaskById(int subtaskId) {
         if (subtasks.get(subtaskId) != null) {
-            Epic epic = epics.get(subtasks.get(subtaskId).getEpicId());
+            Epic epic = writableEpic(subtasks.get(subtaskId).getEpicId());
             if (epic != null) {
-                epic.getSubtasks().remove(Integer.valueOf(subtaskId));
                 subtasks.remove(subtaskId);
                 historyManager.remove(subtaskId);
-                syncEpicStatus(epic);
+                unindex(subtaskId);
+                epic.removeSubtask(subtaskId);
+                subtasksView.invalidate();
+                syncEpic(epic);
             } else {
                 log.info("Epic is not found");
             }
@@ -133,11 +161,15 @@ public class InMemoryTaskManager implements TaskManager {
     public void deleteEpicById(int epicId) {
         Epic epic = epics.remove(epicId);
         historyManager.remove(epicId);
+        epicStatuses.remove(epicId);
         if (epic != null) {
-            for (int subtaskId : epic.getSubtasks()) {
+            for (int subtaskId : epic.getSubtasks().sortedArray()) {
                 subtasks.remove(subtaskId);
                 historyManager.remove(subtaskId);
+                unindex(subtaskId);
             }
+            epicsView.invalidate();
+            subtasksView.invalidate();
         } else {
             log.info("Epic is not found");
         }
@@ -147,15 +179,17 @@ public class InMemoryTaskManager implements TaskManager {
     public Integer addTask(Task task) {
         if (task != null) {
             try {
-                if (isOverlapped(task)) {
+                if (isOverlapped(task, 0)) {
                     throw new ValidateException(ERROR);
                 }
             } catch (ValidateException ex) {
                 throw new ValidateException(ex.getMessage());
             }
 
-            task.setId(uniqueId.incrementAndGet());
+            task.setId(nextId());
             tasks.put(task.getId(), task);
+            index(task);
+            tasksView.invalidate();
             return task.getId();
         } else {
             log.info("Wrong data type is provided");
@@ -167,18 +201,20 @@ public class InMemoryTaskManager implements TaskManager {
     public Integer addSubtask(Subtask task) {
         if (task != null) {
             try {
-                if (isOverlapped(task)) {
+                if (isOverlapped(task, 0)) {
                     throw new ValidateException(ERROR);
                 }
             } catch (ValidateException ex) {
                 throw new ValidateException(ex.getMessage());
             }
-            Epic epic = epics.get(task.getEpicId());
+            Epic epic = writableEpic(task.getEpicId());
             if (epic != null) {
-                task.setId(uniqueId.incrementAndGet());
+                task.setId(nextId());
                 subtasks.put(task.getId(), task);
-                epic.getSubtasks().add(task.getId());
-                syncEpicStatus(epic);
+                index(task);
+                epic.syncSubtask(task);
+                subtasksView.invalidate();
+                syncEpic(epic);
                 return task.getId();
             } else {
                 log.info("Epic is not found");
@@ -190,8 +226,11 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     public Integer addEpic(Epic epic) {
         if (epic != null) {
-            epic.setId(uniqueId.incrementAndGet());
+            epic.setId(nextId());
             epics.put(epic.getId(), epic);
+            epicStatuses.put(epic.getId(), epic.getTaskStatus());
+            stamp(epic);
+            epicsView.invalidate();
             return epic.getId();
         } else {
             log.info("Wrong data type is provided");
@@ -202,17 +241,15 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     public void updateTask(Task task) {
         if (task != null) {
-            Task currentTask = tasks.get(task.getId());
-            if (!currentTask.getStartTime().equals(task.getStartTime()) && !currentTask.getEndTime().equals(task.getEndTime())) {
-                try {
-                    if (isOverlapped(task)) {
-                        throw new ValidateException(ERROR);
-                    }
-                } catch (ValidateException ex) {
-                    throw new ValidateException(ex.getMessage());
-                }
+            if (!tasks.containsKey(task.getId())) {
+                throw new ValidateException("Task is not found: " + task.getId());
+            }
+            if (isOverlapped(task, task.getId())) {
+                throw new ValidateException(ERROR);
             }
             tasks.put(task.getId(), task);
+            index(task);
+            tasksView.invalidate();
         } else {
             log.info("Wrong data type is provided");
         }
@@ -221,18 +258,21 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     public void updateSubtask(Subtask subtask) {
         if (subtask != null) {
-            Subtask currentTask = subtasks.get(subtask.getId());
-            if (!currentTask.getStartTime().equals(subtask.getStartTime()) && !currentTask.getEndTime().equals(subtask.getEndTime())) {
-                try {
-                    if (isOverlapped(subtask)) {
-                        throw new ValidateException(ERROR);
-                    }
-                } catch (ValidateException ex) {
-                    throw new ValidateException(ex.getMessage());
-                }
+            if (!epics.containsKey(subtask.getEpicId())) {
+                throw new ValidateException("Epic is not found: " + subtask.getEpicId());
+            }
+            if (!contains(subtask)) {
+                throw new ValidateException("Task is not found: " + subtask.getId());
+            }
+            if (isOverlapped(subtask, subtask.getId())) {
+                throw new ValidateException(ERROR);
             }
             subtasks.put(subtask.getId(), subtask);
-            syncEpicStatus(epics.get(subtask.getEpicId()));
+            index(subtask);
+            Epic epic = writableEpic(subtask.getEpicId());
+            epic.syncSubtask(subtask);
+            subtasksView.invalidate();
+            syncEpic(epic);
         } else {
             log.info("Wrong data type is provided");
         }
@@ -241,20 +281,64 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     public void updateEpic(Epic epic) {
         if (epic != null) {
-            Epic currentEpic = epics.get(epic.getId());
+            if (!epics.containsKey(epic.getId())) {
+                throw new ValidateException("Task is not found: " + epic.getId());
+            }
+            Epic currentEpic = writableEpic(epic.getId());
             currentEpic.setName(epic.getName());
             currentEpic.setDescription(epic.getDescription());
+            stamp(currentEpic);
+            epicsView.invalidate();
         } else {
             log.info("Wrong data type is provided");
         }
     }
 
+    @Override
+    public List<Integer> addAll(List<? extends Task> batch) {
+        validateBatch(batch, false);
+        List<Integer> ids = new ArrayList<>(batch.size());
+        IntMap<List<Subtask>> touched = new IntMap<>();
+        for (Task task : batch) {
+            task.setId(nextId());
+            ids.add(task.getId());
+            if (task.getTaskType() == TaskType.EPIC) {
+                epics.put(task.getId(), (Epic) task);
+                epicStatuses.put(task.getId(), task.getTaskStatus());
+                stamp(task);
+                epicsView.invalidate();
+            } else {
+                store(task, touched);
+            }
+        }
+        syncEpics(touched);
+        return ids;
+    }
+
+    @Override
+    public void updateAll(List<? extends Task> batch) {
+        validateBatch(batch, true);
+        IntMap<List<Subtask>> touched = new IntMap<>();
+        for (Task task : batch) {
+            if (task.getTaskType() == TaskType.EPIC) {
+                Epic currentEpic = writableEpic(task.getId());
+                currentEpic.setName(task.getName());
+                currentEpic.setDescription(task.getDescription());
+                stamp(currentEpic);
+                epicsView.invalidate();
+            } else {
+                store(task, touched);
+            }
+        }
+        syncEpics(touched);
+    }
+
     @Override
     public List<Subtask> getEpicSubtasks(int epicId) {
         List<Subtask> epicSubtasks = new ArrayList<>();
         Epic epic = epics.get(epicId);
         if (epic != null) {
-            for (Integer subtaskId : epic.getSubtasks()) {
+            for (int subtaskId : epic.getSubtasks().sortedArray()) {
                 epicSubtasks.add(subtasks.get(subtaskId));
             }
         } else {
@@ -263,92 +347,348 @@ public class InMemoryTaskManager implements TaskManager {
         return epicSubtasks;
     }
 
-    private void syncEpicStatus(Epic epic) {
-        List<Subtask> epicSubtasks = getEpicSubtasks(epic.getId());
+    @Override
+    public List<Task> getTasks(int afterId, int limit) {
+        return tasks.valuesAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Subtask> getSubtasks(int afterId, int limit) {
+        return subtasks.valuesAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Epic> getEpics(int afterId, int limit) {
+        return epics.valuesAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Subtask> getEpicSubtasks(int epicId, int afterId, int limit) {
+        List<Subtask> epicSubtasks = new ArrayList<>();
+        Epic epic = epics.get(epicId);
+        if (epic != null) {
+            int[] subtaskIds = epic.getSubtasks().sortedArray();
+            int from = Arrays.binarySearch(subtaskIds, afterId);
+            from = from >= 0 ? from + 1 : -from - 1;
+            for (int i = from; i < subtaskIds.length && epicSubtasks.size() < limit; i++) {
+                epicSubtasks.add(subtasks.get(subtaskIds[i]));
+            }
+        } else {
+            log.info("Epic is not found");
+        }
+        return epicSubtasks;
+    }
+
+    @Override
+    public Stream<Task> streamTasks() {
+        return tasksView.get().stream();
+    }
+
+    @Override
+    public Stream<Subtask> streamSubtasks() {
+        return subtasksView.get().stream();
+    }
+
+    @Override
+    public Stream<Epic> streamEpics() {
+        return epicsView.get().stream();
+    }
+
+    @Override
+    public Stream<Subtask> streamEpicSubtasks(int epicId) {
+        Epic epic = epics.get(epicId);
+        if (epic == null) {
+            log.info("Epic is not found");
+            return Stream.empty();
+        }
+        return Arrays.stream(epic.getSubtasks().sortedArray()).mapToObj(subtasks::get);
+    }
+
+    @Override
+    public List<Task> getTasksByStatus(TaskStatus status) {
+        return select(tasks, taskStatuses.ids(status));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByStatus(TaskStatus status) {
+        return select(subtasks, subtaskStatuses.ids(status));
+    }
+
+    @Override
+    public List<Epic> getEpicsByStatus(TaskStatus status) {
+        return select(epics, epicStatuses.ids(status));
+    }
+
+    @Override
+    public List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        return schedule.overlapping(from, to);
+    }
+
+    @Override
+    public Collection<Task> getPrioritizedTasks() {
+        return prioritizedView.get();
+    }
+
+    @Override
+    public List<Task> getPrioritizedTasks(LocalDateTime afterStart, int afterId, int limit) {
+        return prioritized.after(afterStart, afterId, limit);
+    }
+
+    @Override
+    public Stream<Task> streamPrioritizedTasks() {
+        return prioritizedView.get().stream();
+    }
+
+    @Override
+    public long getTasksVersion() {
+        return tasksView.version();
+    }
+
+    @Override
+    public long getSubtasksVersion() {
+        return subtasksView.version();
+    }
+
+    @Override
+    public long getEpicsVersion() {
+        return epicsView.version();
+    }
+
+    @Override
+    public long getVersion(TaskType type, int id) {
+        Task task;
+        switch (type) {
+            case SUBTASK:
+                task = subtasks.get(id);
+                break;
+            case EPIC:
+                task = epics.get(id);
+                break;
+            default:
+                task = tasks.get(id);
+                break;
+        }
+        return task == null ? -1 : task.getVersion();
+    }
 
-        if (epicSubtasks.isEmpty()) {
-            epic.setTaskStatus(TaskStatus.NEW);
-            return;
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Id for a new task; file-backed managers hand out ids that stay unique
+     * across restarts.
+     */
+    protected int nextId() {
+        return uniqueId.incrementAndGet();
+    }
+
+    protected void restoreTask(Task task) {
+        switch (task.getTaskType()) {
+            case TASK:
+                tasks.put(task.getId(), task);
+                index(task);
+                tasksView.invalidate();
+                break;
+            case SUBTASK:
+                subtasks.put(task.getId(), (Subtask) task);
+                index(task);
+                subtasksView.invalidate();
+                break;
+            case EPIC:
+                epics.put(task.getId(), (Epic) task);
+                epicStatuses.put(task.getId(), task.getTaskStatus());
+                stamp(task);
+                epicsView.invalidate();
+                break;
+        }
+    }
+
+    /**
+     * Removes a task of any type without cascading to subtasks; epics are
+     * brought back in line by {@link #rebuildEpics()}.
+     */
+    protected void discardTask(int id) {
+        if (tasks.remove(id) != null) {
+            tasksView.invalidate();
+        } else if (subtasks.remove(id) != null) {
+            subtasksView.invalidate();
+        } else if (epics.remove(id) != null) {
+            epicStatuses.remove(id);
+            epicsView.invalidate();
         }
-        int newTask = 0;
-        int done = 0;
+        unindex(id);
+        historyManager.remove(id);
+    }
 
-        for (Subtask task : epicSubtasks) {
-            if (task.getTaskStatus() == TaskStatus.NEW) {
-                newTask += 1;
+    /**
+     * Rebuilds subtask lists and aggregates of all epics in one pass over the
+     * subtasks; every epic is refreshed once. Runs right after loading, on
+     * epics no reader has seen yet, so they are changed in place.
+     */
+    protected void rebuildEpics() {
+        IntMap<List<Subtask>> members = new IntMap<>(epics.size());
+        for (Subtask subtask : subtasks.values()) {
+            if (!epics.containsKey(subtask.getEpicId())) {
+                log.info("Epic is not found for subtask {}", subtask.getId());
+                continue;
             }
-            if (task.getTaskStatus() == TaskStatus.DONE) {
-                done += 1;
+            List<Subtask> epicSubtasks = members.get(subtask.getEpicId());
+            if (epicSubtasks == null) {
+                epicSubtasks = new ArrayList<>();
+                members.put(subtask.getEpicId(), epicSubtasks);
             }
+            epicSubtasks.add(subtask);
         }
+        for (Epic epic : epics.values()) {
+            epic.clearSubtasks();
+            List<Subtask> epicSubtasks = members.get(epic.getId());
+            if (epicSubtasks != null) {
+                epic.syncSubtasks(epicSubtasks);
+            }
+            epicStatuses.put(epic.getId(), epic.getTaskStatus());
+            stamp(epic);
+        }
+        epicsView.invalidate();
+    }
 
-        Optional<LocalDateTime> epicEndTime = getEpicEndTime(epic.getId());
-        Optional<LocalDateTime> epicStartTime = getEpicStartTime(epic.getId());
-        Duration epicDuration = getEpicDuration(epic.getId());
-        epicStartTime.ifPresent(epic::setStartTime);
-        epicEndTime.ifPresent(epic::setEndTime);
-        epic.setDuration(epicDuration);
+    protected void clearStores() {
+        tasks.clear();
+        subtasks.clear();
+        epics.clear();
+        schedule.clear();
+        prioritized.clear();
+        taskStatuses.clear();
+        subtaskStatuses.clear();
+        epicStatuses.clear();
+        tasksView.invalidate();
+        subtasksView.invalidate();
+        epicsView.invalidate();
+        prioritizedView.invalidate();
+    }
 
-        if (epicSubtasks.size() == newTask) {
-            epic.setTaskStatus(TaskStatus.NEW);
-            return;
-        }
-        if (epicSubtasks.size() == done) {
-            epic.setTaskStatus(TaskStatus.DONE);
+    private void index(Task task) {
+        stamp(task);
+        schedule.add(task);
+        prioritized.add(task);
+        prioritizedView.invalidate();
+        if (task.getTaskType() == TaskType.SUBTASK) {
+            subtaskStatuses.put(task.getId(), task.getTaskStatus());
         } else {
-            epic.setTaskStatus(TaskStatus.IN_PROGRESS);
+            taskStatuses.put(task.getId(), task.getTaskStatus());
         }
     }
 
-    private Optional<LocalDateTime> getEpicStartTime(int epicId) {
-        return getEpicSubtasks(epicId).stream()
-                .map(t -> Optional.ofNullable(t.getStartTime()))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .min(LocalDateTime::compareTo);
+    private void unindex(int id) {
+        schedule.remove(id);
+        prioritized.remove(id);
+        prioritizedView.invalidate();
+        taskStatuses.remove(id);
+        subtaskStatuses.remove(id);
     }
 
-    private Optional<LocalDateTime> getEpicEndTime(int epicId) {
-        return getEpicSubtasks(epicId).stream()
-                .map(t -> Optional.ofNullable(t.getEndTime()))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .max(LocalDateTime::compareTo);
+    private void syncEpic(Epic epic) {
+        epicStatuses.put(epic.getId(), epic.getTaskStatus());
+        stamp(epic);
+        epicsView.invalidate();
     }
 
-    private Duration getEpicDuration(int epicId) {
-        return getEpicSubtasks(epicId).stream()
-                .map(t -> Optional.ofNullable(t.getDuration()))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .reduce(Duration.ZERO, Duration::plus);
+    /**
+     * Epic about to be changed. A copy takes the place of the stored one, so
+     * an epic already handed out, alone or in a snapshot, never changes under
+     * its reader.
+     */
+    private Epic writableEpic(int epicId) {
+        Epic epic = epics.get(epicId);
+        if (epic == null) {
+            return null;
+        }
+        Epic copy = epic.copy();
+        epics.put(epicId, copy);
+        return copy;
     }
 
-    public SortedSet<Map.Entry<Integer, ? extends Task>> getPrioritizedTasks() {
-        sortedset.addAll(tasks.entrySet());
-        sortedset.addAll(subtasks.entrySet());
-        return sortedset;
+    private void stamp(Task task) {
+        task.setVersion(++clock);
     }
 
-    private boolean isOverlapped(Task task) {
-        LocalDateTime startTime = task.getStartTime();
-        LocalDateTime endTime = task.getEndTime();
-        if (startTime == null || endTime == null) return false;
-        for (Map.Entry<Integer, ? extends Task> entry : getPrioritizedTasks()) {
-            if (entry.getValue().getStartTime() == null || entry.getValue().getEndTime() == null) {
-                continue;
+    private void validateBatch(List<? extends Task> batch, boolean update) {
+        IntSet batchIds = new IntSet();
+        List<Task> scheduled = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            if (task == null || task.getTaskType() == null || task.getTaskStatus() == null
+                    || task.getTaskType() == TaskType.SUBTASK && !(task instanceof Subtask)
+                    || task.getTaskType() == TaskType.EPIC && !(task instanceof Epic)) {
+                throw new ValidateException("Wrong data type is provided");
             }
-            if (startTime.isEqual(entry.getValue().getStartTime()) || endTime.isEqual(entry.getValue().getEndTime())) {
-                return true;
+            if (task.getTaskType() == TaskType.SUBTASK && !epics.containsKey(((Subtask) task).getEpicId())) {
+                throw new ValidateException("Epic is not found: " + ((Subtask) task).getEpicId());
             }
-            if (startTime.isAfter(entry.getValue().getEndTime()) || endTime.isBefore(entry.getValue().getStartTime())) {
-                continue;
+            if (update) {
+                if (!contains(task)) {
+                    throw new ValidateException("Task is not found: " + task.getId());
+                }
+                if (!batchIds.add(task.getId())) {
+                    throw new ValidateException("Task is repeated in batch: " + task.getId());
+                }
             }
-            return startTime.isAfter(entry.getValue().getStartTime())
-                    && startTime.isBefore(entry.getValue().getEndTime())
-                    || endTime.isAfter(entry.getValue().getStartTime())
-                    && endTime.isBefore(entry.getValue().getEndTime());
+            if (task.getTaskType() != TaskType.EPIC) {
+                scheduled.add(task);
+            }
+        }
+        if (schedule.hasOverlap(scheduled, batchIds)) {
+            throw new ValidateException(ERROR);
         }
-        return false;
+    }
+
+    private boolean contains(Task task) {
+        switch (task.getTaskType()) {
+            case TASK:
+                return tasks.containsKey(task.getId());
+            case SUBTASK:
+                Subtask current = subtasks.get(task.getId());
+                return current != null && current.getEpicId().equals(((Subtask) task).getEpicId());
+            default:
+                return epics.containsKey(task.getId());
+        }
+    }
+
+    private void store(Task task, IntMap<List<Subtask>> touched) {
+        index(task);
+        if (task.getTaskType() == TaskType.SUBTASK) {
+            Subtask subtask = (Subtask) task;
+            subtasks.put(subtask.getId(), subtask);
+            List<Subtask> epicBatch = touched.get(subtask.getEpicId());
+            if (epicBatch == null) {
+                epicBatch = new ArrayList<>();
+                touched.put(subtask.getEpicId(), epicBatch);
+            }
+            epicBatch.add(subtask);
+            subtasksView.invalidate();
+        } else {
+            tasks.put(task.getId(), task);
+            tasksView.invalidate();
+        }
+    }
+
+    private void syncEpics(IntMap<List<Subtask>> touched) {
+        for (int epicId : touched.keys()) {
+            Epic epic = writableEpic(epicId);
+            epic.syncSubtasks(touched.get(epicId));
+            syncEpic(epic);
+        }
+    }
+
+    private static <T> List<T> select(IntMap<T> store, int[] ids) {
+        List<T> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(store.get(id));
+        }
+        return result;
+    }
+
+    private boolean isOverlapped(Task task, int excludedId) {
+        return schedule.hasOverlap(task.getStartTime(), task.getEndTime(), excludedId);
     }
 }
@@ -0,0 +1,166 @@
+package service.server;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response body compressed with gzip or deflate when the client accepts it
+ * and the body reaches the threshold. The first bytes are held back until it
+ * is known on which side of the threshold the body is; a body that ends below
+ * it is sent as is, with its length, larger ones are streamed compressed with
+ * chunked encoding. Response headers are sent on the first write past the
+ * threshold or on close.
+ */
+public class CompressedResponseBody extends OutputStream {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HttpExchange h;
+    private final int code;
+    private final String encoding;
+    private final int level;
+    private byte[] head;
+    private int count;
+    private OutputStream out;
+
+    /**
+     * @param encoding {@code gzip}, {@code deflate} or {@code null} to send the body as is
+     */
+    public CompressedResponseBody(HttpExchange h, int code, String encoding, int threshold, int level) {
+        this.h = h;
+        this.code = code;
+        this.encoding = encoding;
+        this.level = level;
+        this.head = new byte[encoding == null ? 0 : threshold];
+    }
+
+    /**
+     * Coding to use for an {@code Accept-Encoding} header: {@code gzip},
+     * {@code deflate} or {@code null} for none. Codings with {@code q=0} are
+     * refused; gzip wins a tie.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String coding = fields[0].trim().toLowerCase(Locale.ROOT);
+            if ("*".equals(coding)) {
+                coding = "gzip";
+            } else if (!"gzip".equals(coding) && !"deflate".equals(coding)) {
+                continue;
+            }
+            double quality = quality(fields);
+            if (quality > bestQuality || quality == bestQuality && quality > 0 && "gzip".equals(coding)) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private static double quality(String[] fields) {
+        for (int i = 1; i < fields.length; i++) {
+            String field = fields[i].trim();
+            if (field.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(field.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (out == null) {
+            if (count + len < head.length) {
+                System.arraycopy(b, off, head, count, len);
+                count += len;
+                return;
+            }
+            start(false);
+        }
+        out.write(b, off, len);
+    }
+
+    /**
+     * Passes on only once the headers are sent; held back bytes stay until
+     * the threshold is reached or the body is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            start(true);
+        }
+        out.close();
+    }
+
+    /**
+     * @param complete the whole body is held back, so it is sent as is with its length
+     */
+    private void start(boolean complete) throws IOException {
+        if (complete) {
+            h.sendResponseHeaders(code, count == 0 ? -1 : count);
+            out = h.getResponseBody();
+        } else if (encoding == null) {
+            h.sendResponseHeaders(code, 0);
+            out = h.getResponseBody();
+        } else {
+            h.getResponseHeaders().set("Content-Encoding", encoding);
+            h.sendResponseHeaders(code, 0);
+            out = "gzip".equals(encoding)
+                    ? new LevelGzipOutputStream(h.getResponseBody(), level)
+                    : new LevelDeflaterOutputStream(h.getResponseBody(), level);
+        }
+        out.write(head, 0, count);
+        head = null;
+    }
+
+    private static class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    private static class LevelDeflaterOutputStream extends DeflaterOutputStream {
+        LevelDeflaterOutputStream(OutputStream out, int level) {
+            super(out, new Deflater(level), BUFFER_SIZE);
+        }
+
+        /**
+         * A deflater passed in is not ended by the stream itself.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+}
@@ -2,8 +2,15 @@ package service.server;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
+import enums.ExecutionMode;
+import enums.TaskStatus;
+import enums.TaskType;
 import exceptions.ValidateException;
 import models.Epic;
 import models.Subtask;
@@ -13,40 +20,119 @@ import org.slf4j.LoggerFactory;
 import service.manager.FileBackedTasksManager;
 import utils.adapter.LocalDateTimeAdapter;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static service.manager.FileBackedTasksManager.loadFromFile;
 
+/**
+ * Task REST API over the JDK {@link HttpServer}.
+ * <p>
+ * Headers and body are written separately, so without TCP_NODELAY the body
+ * waits for the delayed ACK of the headers, about 40 ms per request. Start
+ * the JVM with {@value #NODELAY_PROPERTY}{@code =true}, as {@code Main} does;
+ * the JDK reads it once, when the first server of the process is created.
+ */
 public class HttpTaskServer {
+    public static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
     private final HttpServer server;
     private final Gson gson = new GsonBuilder()
-            .setPrettyPrinting()
             .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
             .create();
+    private final JsonFragmentCache fragments = new JsonFragmentCache(gson);
 
     private static final int PORT = 8080;
-    public FileBackedTasksManager manager;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int QUEUE_PER_THREAD = 16;
+    private static final int WRITE_BUFFER = 8192;
+    private static final int COMPRESSION_THRESHOLD = 1024;
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    public static final String EXECUTION_PROPERTY = "kanban.server.execution";
+    public static final int DEFAULT_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private final ExecutorService executor;
+    public volatile FileBackedTasksManager manager;
     private static final Logger log = LoggerFactory.getLogger(HttpTaskServer.class);
 
-
+    /**
+     * Mode is taken from the {@code kanban.server.execution} property, which the
+     * {@code java21} build profile sets to {@code VIRTUAL}; pooled otherwise.
+     */
     public HttpTaskServer() throws IOException {
+        this(ExecutionMode.valueOf(System.getProperty(EXECUTION_PROPERTY, ExecutionMode.POOLED.name())),
+                DEFAULT_THREADS);
+    }
+
+    /**
+     * @param threads size of the pool in {@code POOLED} mode, ignored for virtual threads
+     */
+    public HttpTaskServer(ExecutionMode mode, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads should be positive: " + threads);
+        }
         server = HttpServer.create(new InetSocketAddress("localhost", PORT), 0);
         server.createContext("/tasks", this::getPrioritizedTasks);
         server.createContext("/tasks/task", this::tasks);
         server.createContext("/tasks/subtask", this::subtasks);
         server.createContext("/tasks/epics", this::epics);
         server.createContext("/tasks/history", this::history);
+        server.createContext("/tasks/batch", this::batch);
         server.createContext("/tasks/subtask/epic", this::getEpicSubtasks);
+        executor = mode == ExecutionMode.VIRTUAL ? virtualThreads(threads) : boundedPool(threads);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Fixed pool with a bounded queue. When the queue is full the request runs
+     * on the dispatcher thread, so the server stops accepting connections until
+     * a worker is free instead of queueing without limit.
+     */
+    private static ExecutorService boundedPool(int threads) {
+        AtomicInteger number = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD),
+                r -> new Thread(r, "http-worker-" + number.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * A virtual thread per request. Looked up reflectively so the code still
+     * builds for Java 11; older runtimes fall back to the bounded pool.
+     */
+    private static ExecutorService virtualThreads(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21, using a pool of {} threads", threads);
+            return boundedPool(threads);
+        }
     }
 
     public void start(String path) {
@@ -59,6 +145,18 @@ public class HttpTaskServer {
     public void stop() {
         log.info("Stopping HttpTaskServer");
         server.stop(1);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (manager != null) {
+            manager.close();
+        }
     }
 
 
@@ -72,40 +170,296 @@ public class HttpTaskServer {
 
     }
 
+    private static boolean isPaged(Map<String, String> params) {
+        return params.containsKey("limit") || params.containsKey("cursor");
+    }
+
+    private static boolean isPretty(HttpExchange h) {
+        return "true".equals(getParamMap(h.getRequestURI().getQuery()).get("pretty"));
+    }
+
+    /**
+     * Serializes {@code body} straight onto the response with chunked encoding,
+     * so the document is never held in memory as a whole. Compact unless the
+     * request asks for {@code ?pretty=true}; compressed if the client accepts
+     * it and the body is not smaller than {@link #COMPRESSION_THRESHOLD}.
+     */
+    private void sendJson(HttpExchange h, Object body) throws IOException {
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(jsonBody(h), UTF_8), WRITE_BUFFER))) {
+            if (isPretty(h)) {
+                writer.setIndent("  ");
+            }
+            gson.toJson(body, body.getClass(), writer);
+        }
+    }
+
+    /**
+     * Sends the cached fragment of the task; pretty output is not cached and
+     * is streamed without the manager lock, since a stored task is replaced,
+     * never changed, once it has been handed out.
+     */
+    private void sendTask(HttpExchange h, Task task) throws IOException {
+        FileBackedTasksManager current = manager;
+        if (isPretty(h)) {
+            sendJson(h, task);
+            return;
+        }
+        long epoch = current.getEpoch();
+        byte[] json = current.locked(() -> fragments.get(epoch, task));
+        try (OutputStream out = jsonBody(h)) {
+            out.write(json);
+        }
+    }
+
+    /**
+     * Assembles the array from cached fragments, so tasks that have not
+     * changed since they were last sent are only copied. Pretty output only
+     * copies the list under the manager lock and is streamed after it is
+     * released.
+     */
+    private void sendTasks(HttpExchange h, Collection<? extends Task> tasks) throws IOException {
+        FileBackedTasksManager current = manager;
+        if (isPretty(h)) {
+            sendJson(h, current.locked(() -> List.copyOf(tasks)));
+            return;
+        }
+        long epoch = current.getEpoch();
+        List<byte[]> parts = current.locked(() -> {
+            List<byte[]> json = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                json.add(fragments.get(epoch, task));
+            }
+            return json;
+        });
+        try (OutputStream out = new BufferedOutputStream(jsonBody(h), WRITE_BUFFER)) {
+            out.write('[');
+            boolean first = true;
+            for (byte[] json : parts) {
+                if (!first) {
+                    out.write(',');
+                }
+                out.write(json);
+                first = false;
+            }
+            out.write(']');
+        }
+    }
+
+    private static OutputStream jsonBody(HttpExchange h) {
+        h.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        h.getResponseHeaders().set("Vary", "Accept-Encoding");
+        String encoding = CompressedResponseBody.negotiate(h.getRequestHeaders().getFirst("Accept-Encoding"));
+        return new CompressedResponseBody(h, 200, encoding, COMPRESSION_THRESHOLD, COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Weak tag of a resource state: the manager epoch, the resource and its
+     * versions. Weak, since compact and pretty bodies of a state share it.
+     */
+    private String etag(String resource, long... versions) {
+        StringBuilder tag = new StringBuilder("W/\"")
+                .append(Long.toHexString(manager.getEpoch()))
+                .append('-')
+                .append(resource);
+        for (long version : versions) {
+            tag.append('-').append(version);
+        }
+        return tag.append('"').toString();
+    }
+
+    private String etag(TaskType type, String id) {
+        long version = manager.getVersion(type, Integer.parseInt(id));
+        return version < 0 ? null : etag(type.name().toLowerCase() + "-" + id, version);
+    }
+
+    /**
+     * Sets the ETag and answers 304 if the client already has this state.
+     * The tag is taken before the data is read, so a change in between only
+     * costs the client one more full response on the next poll.
+     */
+    private static boolean notModified(HttpExchange h, String etag) throws IOException {
+        if (etag == null) {
+            return false;
+        }
+        h.getResponseHeaders().set("ETag", etag);
+        h.getResponseHeaders().set("Vary", "Accept-Encoding");
+        String known = h.getRequestHeaders().getFirst("If-None-Match");
+        if (known == null) {
+            return false;
+        }
+        for (String candidate : known.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate) || opaque(candidate).equals(opaque(etag))) {
+                h.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Request body as text, inflated if it came with {@code Content-Encoding}
+     * gzip or deflate. Other codings are answered with 415 and give
+     * {@code null}.
+     */
+    private static String readBody(HttpExchange h) throws IOException {
+        String encoding = h.getRequestHeaders().getFirst("Content-Encoding");
+        InputStream in = h.getRequestBody();
+        if (encoding == null || "identity".equalsIgnoreCase(encoding.trim())) {
+            return new String(in.readAllBytes(), UTF_8);
+        } else if ("gzip".equalsIgnoreCase(encoding.trim())) {
+            in = new GZIPInputStream(in);
+        } else if ("deflate".equalsIgnoreCase(encoding.trim())) {
+            in = new InflaterInputStream(in);
+        } else {
+            log.info("unsupported content encoding: {}", encoding);
+            sendText(h, 415, "Unsupported content encoding: " + encoding);
+            return null;
+        }
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), UTF_8);
+        }
+    }
+
+    private static void sendText(HttpExchange h, int code, String text) throws IOException {
+        byte[] bytes = text.getBytes(UTF_8);
+        h.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = h.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private void sendPage(HttpExchange h, Map<String, String> params,
+                          BiFunction<Integer, Integer, List<? extends Task>> pager) throws IOException {
+        List<? extends Task> page;
+        int limit;
+        try {
+            limit = pageLimit(params);
+            int cursor = Integer.parseInt(params.getOrDefault("cursor", "0"));
+            page = pager.apply(cursor, limit);
+        } catch (IllegalArgumentException e) {
+            log.info("wrong paging parameters: {}", e.getMessage());
+            sendText(h, 400, "Wrong paging parameters");
+            return;
+        }
+        if (page.size() == limit) {
+            h.getResponseHeaders().add("X-Next-Cursor", String.valueOf(page.get(limit - 1).getId()));
+        }
+        sendTasks(h, page);
+    }
+
+    /**
+     * Prioritized tasks are paged by start time and id, so the cursor is
+     * {@code <start>_<id>}, or just {@code <id>} after an unscheduled task.
+     */
+    private void sendPrioritizedPage(HttpExchange h, Map<String, String> params) throws IOException {
+        List<Task> page;
+        int limit;
+        try {
+            limit = pageLimit(params);
+            String cursor = params.getOrDefault("cursor", "0");
+            int split = cursor.lastIndexOf('_');
+            LocalDateTime afterStart = split < 0 ? null : LocalDateTime.parse(cursor.substring(0, split));
+            int afterId = Integer.parseInt(cursor.substring(split + 1));
+            page = manager.getPrioritizedTasks(afterStart, afterId, limit);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            log.info("wrong paging parameters: {}", e.getMessage());
+            sendText(h, 400, "Wrong paging parameters");
+            return;
+        }
+        if (page.size() == limit) {
+            Task last = page.get(limit - 1);
+            String cursor = last.getStartTime() == null
+                    ? String.valueOf(last.getId())
+                    : last.getStartTime() + "_" + last.getId();
+            h.getResponseHeaders().add("X-Next-Cursor", cursor);
+        }
+        sendTasks(h, page);
+    }
+
+    private static int pageLimit(Map<String, String> params) {
+        int limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be positive");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private void sendByStatus(HttpExchange h, Map<String, String> params,
+                              Function<TaskStatus, List<? extends Task>> filter) throws IOException {
+        TaskStatus status;
+        try {
+            status = TaskStatus.valueOf(params.get("status").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.info("wrong status: {}", params.get("status"));
+            sendText(h, 400, "Wrong status");
+            return;
+        }
+        sendTasks(h, filter.apply(status));
+    }
+
+    private void sendBetween(HttpExchange h, Map<String, String> params) throws IOException {
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            if (!params.containsKey("from") || !params.containsKey("to")) {
+                throw new DateTimeException("from and to are required");
+            }
+            from = LocalDateTime.parse(params.get("from"));
+            to = LocalDateTime.parse(params.get("to"));
+            if (!from.isBefore(to)) {
+                throw new DateTimeException("from should be before to");
+            }
+        } catch (DateTimeException e) {
+            log.info("wrong time window: {}", e.getMessage());
+            sendText(h, 400, "Wrong time window");
+            return;
+        }
+        log.info("get tasks between {} and {}", from, to);
+        sendTasks(h, manager.getTasksBetween(from, to));
+    }
+
     private void getTaskById(HttpExchange h, String taskId) throws IOException {
-        String response;
         log.info("get task by id = {}", taskId);
         Task expectedTask = manager.getTaskById(Integer.parseInt(taskId));
         if (expectedTask == null) {
-            response = "Task is not found";
-            h.sendResponseHeaders(404, response.getBytes().length);
+            sendText(h, 404, "Task is not found");
         } else {
-            response = gson.toJson(expectedTask);
-            h.sendResponseHeaders(200, response.getBytes().length);
-        }
-        try (OutputStream os = h.getResponseBody()) {
-            os.write(response.getBytes());
+            sendTask(h, expectedTask);
         }
     }
 
-    private void getAllTasks(HttpExchange h) throws IOException {
-        log.info("get all tasks");
-        String response = gson.toJson(manager.getAllTasks());
-        h.sendResponseHeaders(200, response.getBytes().length);
-        try (OutputStream os = h.getResponseBody()) {
-            os.write(response.getBytes());
+    private void getAllTasks(HttpExchange h, Map<String, String> params) throws IOException {
+        if (params.containsKey("status")) {
+            log.info("get tasks by status: {}", params.get("status"));
+            sendByStatus(h, params, manager::getTasksByStatus);
+            return;
         }
+        if (isPaged(params)) {
+            log.info("get tasks page: {}", params);
+            sendPage(h, params, manager::getTasks);
+            return;
+        }
+        log.info("get all tasks");
+        sendTasks(h, manager.getAllTasks());
     }
 
     private void deleteTaskById(HttpExchange h, String taskId) throws IOException {
         log.info("delete task by id = {}", taskId);
         manager.deleteTaskById(Integer.parseInt(taskId));
+        fragments.remove(Integer.parseInt(taskId));
         h.sendResponseHeaders(204, -1);
     }
 
     private void deleteAllTasks(HttpExchange h) throws IOException {
         log.info("delete all tasks");
         manager.deleteAllTasks();
+        fragments.removeAll(TaskType.TASK);
         h.sendResponseHeaders(204, -1);
     }
 
@@ -124,14 +478,21 @@ public class HttpTaskServer {
 
     private void tasks(HttpExchange h) throws IOException {
         URI uri = h.getRequestURI();
-        String taskId = getParamMap(uri.getQuery()).get("id");
+        Map<String, String> params = getParamMap(uri.getQuery());
+        String taskId = params.get("id");
         log.info(uri.toString());
         try {
             if ("GET".equals(h.getRequestMethod())) {
+                String etag = taskId == null
+                        ? etag("tasks", manager.getTasksVersion())
+                        : etag(TaskType.TASK, taskId);
+                if (notModified(h, etag)) {
+                    return;
+                }
                 if (taskId != null) {
                     getTaskById(h, taskId);
                 } else {
-                    getAllTasks(h);
+                    getAllTasks(h, params);
                 }
             } else if ("DELETE".equals(h.getRequestMethod())) {
                 if (taskId != null) {
@@ -140,7 +501,10 @@ public class HttpTaskServer {
                     deleteAllTasks(h);
                 }
             } else if ("POST".equals(h.getRequestMethod())) {
-                String body = new String(h.getRequestBody().readAllBytes(), UTF_8);
+                String body = readBody(h);
+                if (body == null) {
+                    return;
+                }
                 Task taskFromJson = gson.fromJson(body, Task.class);
                 Task task = manager.getTaskById(taskFromJson.getId());
                 if (task == null) {
@@ -161,39 +525,41 @@ public class HttpTaskServer {
 
 
     private void getSubtaskById(HttpExchange h, String taskId) throws IOException {
-        String response;
         log.info("get subtask by id = {}", taskId);
         Task expectedTask = manager.getSubtaskById(Integer.parseInt(taskId));
         if (expectedTask == null) {
-            response = "Subtask is not found";
-            h.sendResponseHeaders(404, response.getBytes().length);
+            sendText(h, 404, "Subtask is not found");
         } else {
-            response = gson.toJson(expectedTask);
-            h.sendResponseHeaders(200, response.getBytes().length);
-        }
-        try (OutputStream os = h.getResponseBody()) {
-            os.write(response.getBytes());
+            sendTask(h, expectedTask);
         }
     }
 
-    private void getAllSubtasks(HttpExchange h) throws IOException {
-        log.info("get all subtasks");
-        String response = gson.toJson(manager.getAllSubtasks());
-        h.sendResponseHeaders(200, response.getBytes().length);
-        try (OutputStream os = h.getResponseBody()) {
-            os.write(response.getBytes());
+    private void getAllSubtasks(HttpExchange h, Map<String, String> params) throws IOException {
+        if (params.containsKey("status")) {
+            log.info("get subtasks by status: {}", params.get("status"));
+            sendByStatus(h, params, manager::getSubtasksByStatus);
+            return;
+        }
+        if (isPaged(params)) {
+            log.info("get subtasks page: {}", params);
+            sendPage(h, params, manager::getSubtasks);
+            return;
         }
+        log.info("get all subtasks");
+        sendTasks(h, manager.getAllSubtasks());
     }
 
     private void deleteSubtaskById(HttpExchange h, String taskId) throws IOException {
         log.info("delete subtask by id = {}", taskId);
         manager.deleteSubtaskById(Integer.parseInt(taskId));
+        fragments.remove(Integer.parseInt(taskId));
         h.sendResponseHeaders(204, -1);
     }
 
     private void deleteAllSubtasks(HttpExchange h) throws IOException {
         log.info("delete all subtasks");
         manager.deleteAllSubtasks();
+        fragments.removeAll(TaskType.SUBTASK);
         h.sendResponseHeaders(204, -1);
     }
 
@@ -212,14 +578,21 @@ public class HttpTaskServer {
 
     private void subtasks(HttpExchange h) throws IOException {
         URI uri = h.getRequestURI();
-        String subtaskId = getParamMap(uri.getQuery()).get("id");
+        Map<String, String> params = getParamMap(uri.getQuery());
+        String subtaskId = params.get("id");
         log.info(uri.toString());
         try {
             if ("GET".equals(h.getRequestMethod())) {
+                String etag = subtaskId == null
+                        ? etag("subtasks", manager.getSubtasksVersion())
+                        : etag(TaskType.SUBTASK, subtaskId);
+                if (notModified(h, etag)) {
+                    return;
+                }
                 if (subtaskId != null) {
                     getSubtaskById(h, subtaskId);
                 } else {
-                    getAllSubtasks(h);
+                    getAllSubtasks(h, params);
                 }
             } else if ("DELETE".equals(h.getRequestMethod())) {
                 if (subtaskId != null) {
@@ -228,7 +601,10 @@ public class HttpTaskServer {
                     deleteAllSubtasks(h);
                 }
             } else if ("POST".equals(h.getRequestMethod())) {
-                String body = new String(h.getRequestBody().readAllBytes(), UTF_8);
+                String body = readBody(h);
+                if (body == null) {
+                    return;
+                }
                 Subtask taskFromJson = gson.fromJson(body, Subtask.class);
                 Task task = manager.getSubtaskById(taskFromJson.getId());
                 if (task == null) {
@@ -249,39 +625,41 @@ public class HttpTaskServer {
 
 
     private void getEpicById(HttpExchange h, String taskId) throws IOException {
-        String response;
         log.info("get epic by id = {}", taskId);
         Task expectedTask = manager.getEpicById(Integer.parseInt(taskId));
         if (expectedTask == null) {
-            response = "Epic is not found";
-            h.sendResponseHeaders(404, response.getBytes().length);
+            sendText(h, 404, "Epic is not found");
         } else {
-            response = gson.toJson(expectedTask);
-            h.sendResponseHeaders(200, response.getBytes().length);
-        }
-        try (OutputStream os = h.getResponseBody()) {
-            os.write(response.getBytes());
+            sendTask(h, expectedTask);
         }
     }
 
-    private void getAllEpics(HttpExchange h) throws IOException {
-        log.info("get all epics");
-        String response = gson.toJson(manager.getAllEpics());
-        h.sendResponseHeaders(200, response.getBytes().length);
-        try (OutputStream os = h.getResponseBody()) {
-            os.write(response.getBytes());
+    private void getAllEpics(HttpExchange h, Map<String, String> params) throws IOException {
+        if (params.containsKey("status")) {
+            log.info("get epics by status: {}", params.get("status"));
+            sendByStatus(h, params, manager::getEpicsByStatus);
+            return;
+        }
+        if (isPaged(params)) {
+            log.info("get epics page: {}", params);
+            sendPage(h, params, manager::getEpics);
+            return;
         }
+        log.info("get all epics");
+        sendTasks(h, manager.getAllEpics());
     }
 
     private void deleteEpicById(HttpExchange h, String epicId) throws IOException {
         log.info("delete epic by id = {}", epicId);
         manager.deleteEpicById(Integer.parseInt(epicId));
+        fragments.removeEpic(Integer.parseInt(epicId));
         h.sendResponseHeaders(204, -1);
     }
 
     private void deleteAllEpics(HttpExchange h) throws IOException {
         log.info("delete all epics");
         manager.deleteAllEpics();
+        fragments.removeAll(TaskType.EPIC);
         h.sendResponseHeaders(204, -1);
     }
 
@@ -300,14 +678,21 @@ public class HttpTaskServer {
 
     private void epics(HttpExchange h) throws IOException {
         URI uri = h.getRequestURI();
-        String epicId = getParamMap(uri.getQuery()).get("id");
+        Map<String, String> params = getParamMap(uri.getQuery());
+        String epicId = params.get("id");
         log.info(uri.toString());
         try {
             if ("GET".equals(h.getRequestMethod())) {
+                String etag = epicId == null
+                        ? etag("epics", manager.getEpicsVersion())
+                        : etag(TaskType.EPIC, epicId);
+                if (notModified(h, etag)) {
+                    return;
+                }
                 if (epicId != null) {
                     getEpicById(h, epicId);
                 } else {
-                    getAllEpics(h);
+                    getAllEpics(h, params);
                 }
             } else if ("DELETE".equals(h.getRequestMethod())) {
                 if (epicId != null) {
@@ -316,7 +701,10 @@ public class HttpTaskServer {
                     deleteAllEpics(h);
                 }
             } else if ("POST".equals(h.getRequestMethod())) {
-                String body = new String(h.getRequestBody().readAllBytes(), UTF_8);
+                String body = readBody(h);
+                if (body == null) {
+                    return;
+                }
                 Epic taskFromJson = gson.fromJson(body, Epic.class);
                 Task task = manager.getEpicById(taskFromJson.getId());
                 if (task == null) {
@@ -340,15 +728,19 @@ public class HttpTaskServer {
             URI uri = h.getRequestURI();
             log.info(uri.toString());
             if ("GET".equals(h.getRequestMethod())) {
-                List<Task> tasks = manager.getPrioritizedTasks()
-                        .stream()
-                        .map(Map.Entry::getValue)
-                        .collect(Collectors.toList());
-                String response = gson.toJson(tasks);
-                h.sendResponseHeaders(200, response.getBytes().length);
-                try (OutputStream os = h.getResponseBody()) {
-                    os.write(response.getBytes());
+                if (notModified(h, etag("prioritized", manager.getTasksVersion(), manager.getSubtasksVersion()))) {
+                    return;
+                }
+                Map<String, String> params = getParamMap(uri.getQuery());
+                if (params.containsKey("from") || params.containsKey("to")) {
+                    sendBetween(h, params);
+                    return;
                 }
+                if (isPaged(params)) {
+                    sendPrioritizedPage(h, params);
+                    return;
+                }
+                sendTasks(h, manager.getPrioritizedTasks());
             } else {
                 log.warn("/tasks is waiting GET request, but {} got ", h.getRequestMethod());
                 h.sendResponseHeaders(403, 0);
@@ -361,7 +753,6 @@ public class HttpTaskServer {
     }
 
     private void getEpicSubtasks(HttpExchange h) throws IOException {
-        String response;
         try {
             URI uri = h.getRequestURI();
             String epicId = getParamMap(uri.getQuery()).get("id");
@@ -369,15 +760,10 @@ public class HttpTaskServer {
             if ("GET".equals(h.getRequestMethod())) {
                 if (epicId != null) {
                     log.info("get epic subtasks by epicId = {}", epicId);
-                    response = gson.toJson(manager.getEpicSubtasks(Integer.parseInt(epicId)));
-                    h.sendResponseHeaders(200, response.getBytes().length);
+                    sendTasks(h, manager.getEpicSubtasks(Integer.parseInt(epicId)));
                 } else {
                     log.info("epicId is missed");
-                    response = "epicId is missed";
-                    h.sendResponseHeaders(400, response.getBytes().length);
-                }
-                try (OutputStream os = h.getResponseBody()) {
-                    os.write(response.getBytes());
+                    sendText(h, 400, "epicId is missed");
                 }
             } else {
                 log.warn("/tasks/subtasks/epic is waiting GET request, but {} got ", h.getRequestMethod());
@@ -389,18 +775,13 @@ public class HttpTaskServer {
     }
 
     private void history(HttpExchange h) throws IOException {
-        String response;
         try {
             URI uri = h.getRequestURI();
             log.info(uri.toString());
             if ("GET".equals(h.getRequestMethod())) {
-                List<? extends Task> history = manager.historyManager.getHistory();
-                response = gson.toJson(history);
-                log.info("get history: {}", response);
-                h.sendResponseHeaders(200, response.getBytes().length);
-                try (OutputStream os = h.getResponseBody()) {
-                    os.write(response.getBytes());
-                }
+                List<? extends Task> history = manager.getHistory();
+                log.info("get history of {} tasks", history.size());
+                sendTasks(h, history);
             } else {
                 log.warn("/tasks/history is waiting GET request, but {} got ", h.getRequestMethod());
                 h.sendResponseHeaders(403, 0);
@@ -409,4 +790,57 @@ public class HttpTaskServer {
             h.close();
         }
     }
+
+    private List<Task> parseBatch(String body) {
+        List<Task> batch = new ArrayList<>();
+        for (JsonElement element : JsonParser.parseString(body).getAsJsonArray()) {
+            JsonElement type = element.getAsJsonObject().get("taskType");
+            TaskType taskType = type == null ? TaskType.TASK : TaskType.valueOf(type.getAsString());
+            switch (taskType) {
+                case SUBTASK:
+                    batch.add(gson.fromJson(element, Subtask.class));
+                    break;
+                case EPIC:
+                    batch.add(gson.fromJson(element, Epic.class));
+                    break;
+                default:
+                    batch.add(gson.fromJson(element, Task.class));
+                    break;
+            }
+        }
+        return batch;
+    }
+
+    private void batch(HttpExchange h) throws IOException {
+        try {
+            URI uri = h.getRequestURI();
+            log.info(uri.toString());
+            if ("POST".equals(h.getRequestMethod()) || "PUT".equals(h.getRequestMethod())) {
+                try {
+                    String body = readBody(h);
+                    if (body == null) {
+                        return;
+                    }
+                    List<Task> batch = parseBatch(body);
+                    if ("POST".equals(h.getRequestMethod())) {
+                        log.info("add batch of {} tasks", batch.size());
+                        sendJson(h, manager.addAll(batch));
+                    } else {
+                        log.info("update batch of {} tasks", batch.size());
+                        manager.updateAll(batch);
+                        h.sendResponseHeaders(200, -1);
+                    }
+                } catch (ValidateException | JsonParseException | DateTimeException | IllegalStateException
+                         | IllegalArgumentException e) {
+                    log.error(e.getMessage());
+                    sendText(h, 400, "Batch is rejected: " + e.getMessage());
+                }
+            } else {
+                log.warn("/tasks/batch is waiting POST/PUT request, but {} got ", h.getRequestMethod());
+                h.sendResponseHeaders(403, 0);
+            }
+        } finally {
+            h.close();
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package service.server;
+
+import com.google.gson.Gson;
+import enums.TaskType;
+import models.Subtask;
+import models.Task;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact JSON of tasks, subtasks and epics, encoded once as UTF-8 and reused
+ * until the task changes. A fragment is valid for the manager epoch and task
+ * version it was made for, so an update makes it stale by itself; deletes are
+ * reported by the server to drop fragments of tasks that are gone.
+ * <p>
+ * {@link #get(long, Task)} reads the version and serializes the task, so it
+ * must run under the manager lock, where no change can happen in between.
+ * Fragments are kept per task type, and subtask ids per epic, so dropping a
+ * type or an epic does not scan the other fragments. A new manager epoch
+ * drops everything made for the previous one.
+ */
+public class JsonFragmentCache {
+    private final Gson gson;
+    private final Map<TaskType, ConcurrentHashMap<Integer, Fragment>> fragments = new EnumMap<>(TaskType.class);
+    private final ConcurrentHashMap<Integer, Set<Integer>> epicSubtasks = new ConcurrentHashMap<>();
+    private volatile long epoch;
+
+    public JsonFragmentCache(Gson gson) {
+        this.gson = gson;
+        for (TaskType type : TaskType.values()) {
+            fragments.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    public byte[] get(long epoch, Task task) {
+        if (epoch != this.epoch) {
+            reset(epoch);
+        }
+        ConcurrentHashMap<Integer, Fragment> ofType = fragments.get(task.getTaskType());
+        long version = task.getVersion();
+        Fragment fragment = ofType.get(task.getId());
+        if (fragment != null && fragment.epoch == epoch && fragment.version == version) {
+            return fragment.json;
+        }
+        byte[] json = gson.toJson(task).getBytes(UTF_8);
+        if (version > 0) {
+            int epicId = task instanceof Subtask ? ((Subtask) task).getEpicId() : 0;
+            ofType.put(task.getId(), new Fragment(epoch, version, epicId, json));
+            if (epicId != 0) {
+                epicSubtasks.computeIfAbsent(epicId, id -> ConcurrentHashMap.newKeySet()).add(task.getId());
+            }
+        }
+        return json;
+    }
+
+    public void remove(int id) {
+        for (ConcurrentHashMap<Integer, Fragment> ofType : fragments.values()) {
+            Fragment fragment = ofType.remove(id);
+            if (fragment != null && fragment.epicId != 0) {
+                Set<Integer> subtasks = epicSubtasks.get(fragment.epicId);
+                if (subtasks != null) {
+                    subtasks.remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops an epic together with its subtasks.
+     */
+    public void removeEpic(int epicId) {
+        fragments.get(TaskType.EPIC).remove(epicId);
+        Set<Integer> subtasks = epicSubtasks.remove(epicId);
+        if (subtasks != null) {
+            ConcurrentHashMap<Integer, Fragment> ofType = fragments.get(TaskType.SUBTASK);
+            for (int subtaskId : subtasks) {
+                ofType.remove(subtaskId);
+            }
+        }
+    }
+
+    /**
+     * Drops every fragment of a type; subtasks go together with epics.
+     */
+    public void removeAll(TaskType type) {
+        fragments.get(type).clear();
+        if (type == TaskType.EPIC) {
+            fragments.get(TaskType.SUBTASK).clear();
+        }
+        if (type != TaskType.TASK) {
+            epicSubtasks.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<Integer, Fragment> ofType : fragments.values()) {
+            size += ofType.size();
+        }
+        return size;
+    }
+
+    private synchronized void reset(long epoch) {
+        if (epoch == this.epoch) {
+            return;
+        }
+        for (ConcurrentHashMap<Integer, Fragment> ofType : fragments.values()) {
+            ofType.clear();
+        }
+        epicSubtasks.clear();
+        this.epoch = epoch;
+    }
+
+    private static class Fragment {
+        private final long epoch;
+        private final long version;
+        private final int epicId;
+        private final byte[] json;
+
+        Fragment(long epoch, long version, int epicId, byte[] json) {
+            this.epoch = epoch;
+            this.version = version;
+            this.epicId = epicId;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package service.storage;
+
+import enums.TaskStatus;
+import enums.TaskType;
+import models.Epic;
+import models.Subtask;
+import models.Task;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the task store:
+ * <pre>
+ * magic "KNBN", version byte
+ * varint count, then per task:
+ *   varint id, byte type, byte status, string name, string description,
+ *   [varint epic id for subtasks], byte flags,
+ *   [zigzag varlong start in epoch micros, UTC],
+ *   [zigzag varlong duration seconds, varint nanos of the second]
+ * varint count, then varint history ids
+ * </pre>
+ * Strings are a varint of length + 1 (0 for null) followed by UTF-8 bytes.
+ * Version 1 stored the duration as one varlong of nanos, which does not fit
+ * durations of more than about 292 years; such files are still read.
+ * Epic time and status are not stored: they are rebuilt from subtasks on load,
+ * and the end time of a task follows from its start and duration.
+ */
+public final class BinarySnapshot {
+    private static final byte[] MAGIC = {'K', 'N', 'B', 'N'};
+    private static final int VERSION = 2;
+    private static final int NANOS_VERSION = 1;
+    private static final int HAS_START = 1;
+    private static final int HAS_DURATION = 2;
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private BinarySnapshot() {
+    }
+
+    public static boolean isBinary(byte[] header) {
+        return header.length >= MAGIC.length && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    public static int headerLength() {
+        return MAGIC.length;
+    }
+
+    public static void write(OutputStream stream, List<Task> tasks, List<Task> history) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeVarInt(out, tasks.size());
+        for (Task task : tasks) {
+            writeVarInt(out, task.getId());
+            out.writeByte(task.getTaskType().ordinal());
+            out.writeByte(task.getTaskStatus().ordinal());
+            writeString(out, task.getName());
+            writeString(out, task.getDescription());
+            if (task.getTaskType() == TaskType.SUBTASK) {
+                writeVarInt(out, ((Subtask) task).getEpicId());
+            }
+            boolean scheduled = task.getTaskType() != TaskType.EPIC;
+            LocalDateTime start = scheduled ? task.getStartTime() : null;
+            Duration duration = scheduled ? task.getDuration() : null;
+            out.writeByte((start != null ? HAS_START : 0) | (duration != null ? HAS_DURATION : 0));
+            if (start != null) {
+                writeVarLong(out, start.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + start.getNano() / 1_000);
+            }
+            if (duration != null) {
+                writeVarLong(out, duration.getSeconds());
+                writeVarInt(out, duration.getNano());
+            }
+        }
+        writeVarInt(out, history.size());
+        for (Task task : history) {
+            writeVarInt(out, task.getId());
+        }
+        out.flush();
+    }
+
+    /**
+     * Hands every stored task to {@code tasks} in file order and returns the
+     * history ids. {@code size} is the length of the snapshot in bytes; no
+     * string longer than what is left of it is allocated.
+     */
+    public static List<Integer> read(InputStream stream, long size, Consumer<Task> tasks) throws IOException {
+        CountingInputStream counter = new CountingInputStream(stream);
+        DataInputStream in = new DataInputStream(counter);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!isBinary(magic)) {
+            throw new IOException("Not a binary snapshot");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION && version != NANOS_VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            int id = readVarInt(in);
+            TaskType type = TYPES[ordinal(in, TYPES.length, "type")];
+            TaskStatus status = STATUSES[ordinal(in, STATUSES.length, "status")];
+            String name = readString(in, size - counter.count);
+            String description = readString(in, size - counter.count);
+            Task task;
+            switch (type) {
+                case SUBTASK:
+                    task = new Subtask(name, description, readVarInt(in));
+                    break;
+                case EPIC:
+                    task = new Epic(name, description);
+                    break;
+                default:
+                    task = new Task(name, description);
+                    break;
+            }
+            task.setId(id);
+            task.setTaskStatus(status);
+            int flags = in.readUnsignedByte();
+            if ((flags & HAS_START) != 0) {
+                long micros = readVarLong(in);
+                task.setStartTime(LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                        Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC));
+            }
+            if ((flags & HAS_DURATION) != 0) {
+                task.setDuration(version == NANOS_VERSION
+                        ? Duration.ofNanos(readVarLong(in))
+                        : Duration.ofSeconds(readVarLong(in), readVarInt(in)));
+            }
+            tasks.accept(task);
+        }
+        int historySize = readVarInt(in);
+        if (historySize < 0) {
+            throw new IOException("Malformed history size in snapshot: " + historySize);
+        }
+        List<Integer> history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            history.add(readVarInt(in));
+        }
+        return history;
+    }
+
+    private static int ordinal(DataInputStream in, int count, String field) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= count) {
+            throw new IOException("Unknown task " + field + " in snapshot: " + ordinal);
+        }
+        return ordinal;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long remaining) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > remaining) {
+            throw new IOException("Malformed string length in snapshot: " + length);
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package service.storage;
+
+import exceptions.ManagerSaveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out task ids from blocks reserved in advance. The end of the last
+ * reserved block, the high-water mark, is kept in a file and forced to disk
+ * before any id of the block is handed out, so no id is issued twice, also
+ * across restarts. Ids left unused in a block when the process stops are
+ * skipped.
+ * <p>
+ * Inside a block ids come from an atomic counter without locking; only
+ * reserving the next block takes the lock and touches the disk. Processes
+ * sharing the mark would reserve blocks by moving it the same way, each
+ * then handing out ids from its own block.
+ */
+public class BlockIdAllocator {
+    private static final Logger log = LoggerFactory.getLogger(BlockIdAllocator.class);
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private final Path path;
+    private final int blockSize;
+    private final AtomicInteger last;
+    private volatile int limit;
+
+    public BlockIdAllocator(Path path, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size should be positive: " + blockSize);
+        }
+        this.path = path;
+        this.blockSize = blockSize;
+        this.limit = readMark(path);
+        this.last = new AtomicInteger(limit);
+    }
+
+    public int next() {
+        int id = last.incrementAndGet();
+        if (id > limit) {
+            reserve(id);
+        }
+        return id;
+    }
+
+    /**
+     * Makes sure ids up to {@code id} are never handed out, e.g. for tasks
+     * loaded from a store written before the mark was kept.
+     */
+    public void skipTo(int id) {
+        last.accumulateAndGet(id, Math::max);
+    }
+
+    private synchronized void reserve(int id) {
+        if (id <= limit) {
+            return;
+        }
+        long mark = limit;
+        while (mark < id) {
+            mark += blockSize;
+        }
+        int reserved = (int) Math.min(mark, Integer.MAX_VALUE);
+        writeMark(reserved);
+        limit = reserved;
+    }
+
+    private void writeMark(int mark) {
+        Path temp = Paths.get(path + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = StandardCharsets.US_ASCII.encode(mark + "\n");
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Ошибка записи счётчика id");
+        }
+    }
+
+    private static int readMark(Path path) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(Files.readString(path, StandardCharsets.US_ASCII).trim());
+        } catch (IOException | NumberFormatException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Ошибка чтения счётчика id");
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package service.storage;
+
+/**
+ * When the journal is folded into a new snapshot. The log is checked every
+ * {@code checkIntervalMillis} and compacted once it holds more than
+ * {@code maxLogBytes} bytes or {@code maxLogRecords} records, which bounds both
+ * the log size and the replay work on startup.
+ */
+public final class CompactionPolicy {
+    private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1_000;
+
+    private final long maxLogBytes;
+    private final long maxLogRecords;
+    private final long checkIntervalMillis;
+
+    private CompactionPolicy(long maxLogBytes, long maxLogRecords, long checkIntervalMillis) {
+        this.maxLogBytes = maxLogBytes;
+        this.maxLogRecords = maxLogRecords;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    public static CompactionPolicy defaults() {
+        return of(16L * 1024 * 1024, 100_000);
+    }
+
+    public static CompactionPolicy never() {
+        return new CompactionPolicy(Long.MAX_VALUE, Long.MAX_VALUE, 0);
+    }
+
+    public static CompactionPolicy of(long maxLogBytes, long maxLogRecords) {
+        if (maxLogBytes <= 0 || maxLogRecords <= 0) {
+            throw new IllegalArgumentException("Compaction thresholds should be positive");
+        }
+        return new CompactionPolicy(maxLogBytes, maxLogRecords, DEFAULT_CHECK_INTERVAL_MILLIS);
+    }
+
+    public CompactionPolicy checkEvery(long checkIntervalMillis) {
+        if (checkIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval should be positive: " + checkIntervalMillis);
+        }
+        return new CompactionPolicy(maxLogBytes, maxLogRecords, checkIntervalMillis);
+    }
+
+    public boolean isEnabled() {
+        return checkIntervalMillis > 0;
+    }
+
+    public boolean isDue(long logBytes, long logRecords) {
+        return logBytes >= maxLogBytes || logRecords >= maxLogRecords;
+    }
+
+    public long getMaxLogBytes() {
+        return maxLogBytes;
+    }
+
+    public long getMaxLogRecords() {
+        return maxLogRecords;
+    }
+
+    public long getCheckIntervalMillis() {
+        return checkIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionPolicy{" +
+                "maxLogBytes=" + maxLogBytes +
+                ", maxLogRecords=" + maxLogRecords +
+                ", checkIntervalMillis=" + checkIntervalMillis +
+                '}';
+    }
+}
@@ -0,0 +1,113 @@
+package service.storage;
+
+/**
+ * Escaping of free text (names and descriptions) in CSV task lines, so that
+ * a field never contains the comma that separates fields or the line break
+ * that ends a line, in the snapshot and in journal records alike:
+ * <pre>
+ * \  →  \\
+ * ,  →  \c
+ * LF →  \n
+ * CR →  \r
+ * </pre>
+ * Lines are still split on every comma; fields are unescaped after that.
+ * <p>
+ * Files written before escaping was introduced hold text as is. A snapshot
+ * with escaped text starts with {@link #HEADER}, a journal marks it in its
+ * checkpoint record; text from older files is not unescaped.
+ */
+public final class CsvFields {
+    public static final String HEADER = "id,type,name,status,description,epic,startTime,duration,endTime;escaped";
+    private static final char ESCAPE = '\\';
+
+    private CsvFields() {
+    }
+
+    public static String escape(String value) {
+        int i = 0;
+        while (i < value.length() && !isSpecial(value.charAt(i))) {
+            i++;
+        }
+        if (i == value.length()) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case ESCAPE:
+                    sb.append(ESCAPE).append(ESCAPE);
+                    break;
+                case ',':
+                    sb.append(ESCAPE).append('c');
+                    break;
+                case '\n':
+                    sb.append(ESCAPE).append('n');
+                    break;
+                case '\r':
+                    sb.append(ESCAPE).append('r');
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reverses {@link #escape(String)}; an unknown or dangling escape is kept as is.
+     */
+    public static String unescape(String value) {
+        int i = value.indexOf(ESCAPE);
+        if (i < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length()).append(value, 0, i);
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ESCAPE || i + 1 == value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case ESCAPE:
+                    sb.append(ESCAPE);
+                    break;
+                case 'c':
+                    sb.append(',');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                default:
+                    sb.append(c).append(next);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Whether a snapshot with this first line holds escaped text.
+     */
+    public static boolean isEscaped(String header) {
+        return header.trim().equals(HEADER);
+    }
+
+    /**
+     * Turns a task line of an older file, whose text is not escaped, into one
+     * that {@link #unescape(String)} gives back unchanged. Such lines cannot
+     * contain line breaks, and their commas already split fields, so only
+     * backslashes need escaping.
+     */
+    public static String fromLegacy(String line) {
+        return line.indexOf(ESCAPE) < 0 ? line : line.replace("\\", "\\\\");
+    }
+
+    private static boolean isSpecial(char c) {
+        return c == ESCAPE || c == ',' || c == '\n' || c == '\r';
+    }
+}
@@ -0,0 +1,507 @@
+package service.storage;
+
+import enums.TaskStatus;
+import enums.TaskType;
+import models.Epic;
+import models.Subtask;
+import models.Task;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader of the CSV snapshot:
+ * <pre>
+ * id,type,name,status,description,epic,startTime,duration,endTime
+ * one line per task
+ * (blank line)
+ * comma separated history ids
+ * </pre>
+ * Names and descriptions are escaped as described in {@link CsvFields}
+ * when the header says so; text of older snapshots is read as is.
+ * The file is read window by window into a direct buffer that is reused for
+ * every window, and every line is parsed in place: numbers, enums and times
+ * are read straight from the buffer, only names and descriptions become
+ * Strings. A line crossing the end of a window is re-read from a window
+ * starting at it, so memory used for the file itself stays within one window
+ * whatever its size. The file is not memory-mapped: a mapping lives until
+ * it is collected, and on Windows the snapshot could not be replaced by the
+ * checkpoint that follows a load while one is alive.
+ * <p>
+ * A large file is read in parallel: the task lines are cut into chunks on
+ * line boundaries, every chunk is parsed on a fork-join pool by a reader of
+ * its own and the results are passed on in file order.
+ */
+public final class CsvSnapshotReader {
+    private static final int WINDOW = 32 << 20;
+    private static final long MIN_CHUNK = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int PROBE = 64 << 10;
+    private static final int TIME_LENGTH = "yyyy-MM-dd HH:mm:ss.SSSSSS".length();
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final byte[][] TYPE_NAMES = names(TYPES);
+    private static final byte[][] STATUS_NAMES = names(STATUSES);
+
+    private final FileChannel channel;
+    private final long end;
+    private final boolean escaped;
+    private int window = WINDOW;
+    private ByteBuffer buffer;
+    private long base;
+    private long position;
+    private int lineStart;
+    private int lineEnd;
+    private int[] fieldStart = new int[10];
+    private int[] fieldEnd = new int[10];
+    private int fields;
+    private byte[] scratch = new byte[256];
+    private final Slice slice = new Slice();
+
+    private CsvSnapshotReader(FileChannel channel, long start, long end, boolean escaped) {
+        this.channel = channel;
+        this.escaped = escaped;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Passes every task of the snapshot to {@code tasks} in file order and
+     * returns the history ids. With {@code parallelism} above 1 a file of
+     * more than a couple of chunks is parsed by that many threads.
+     */
+    public static List<Integer> read(FileChannel channel, Consumer<Task> tasks, int parallelism)
+            throws IOException {
+        long size = channel.size();
+        boolean escaped = isEscaped(channel, size);
+        if (parallelism > 1 && size >= 2 * MIN_CHUNK) {
+            long tasksStart = lineAfter(channel, 0, size);
+            long historyStart = lineBefore(channel, size, 0) + 1;
+            long tasksEnd = blankLineBefore(channel, historyStart - 1, tasksStart);
+            if (tasksEnd >= 0) {
+                readParallel(channel, tasksStart, tasksEnd, tasks, parallelism, escaped);
+                List<Integer> history = new ArrayList<>();
+                CsvSnapshotReader reader = new CsvSnapshotReader(channel, historyStart, size, escaped);
+                if (reader.nextLine()) {
+                    reader.readHistory(history);
+                }
+                return history;
+            }
+        }
+        return new CsvSnapshotReader(channel, 0, size, escaped).read(tasks);
+    }
+
+    private static void readParallel(FileChannel channel, long from, long to, Consumer<Task> tasks,
+                                     int parallelism, boolean escaped) throws IOException {
+        long chunk = Math.min(WINDOW, Math.max(MIN_CHUNK, (to - from) / ((long) parallelism * CHUNKS_PER_THREAD)));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<List<Task>>> chunks = new ArrayList<>();
+            long start = from;
+            while (start < to) {
+                long stop = start + chunk >= to ? to : lineAfter(channel, start + chunk, to);
+                CsvSnapshotReader reader = new CsvSnapshotReader(channel, start, stop, escaped);
+                chunks.add(pool.submit(reader::readChunk));
+                start = stop;
+            }
+            for (ForkJoinTask<List<Task>> parsed : chunks) {
+                parsed.get().forEach(tasks);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Snapshot loading is interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<Task> readChunk() throws IOException {
+        List<Task> parsed = new ArrayList<>();
+        while (nextLine()) {
+            if (lineStart != lineEnd) {
+                split();
+                parsed.add(readTask());
+            }
+        }
+        return parsed;
+    }
+
+    private List<Integer> read(Consumer<Task> tasks) throws IOException {
+        List<Integer> history = new ArrayList<>();
+        if (end == 0 || !nextLine()) {
+            return history;
+        }
+        // первая строка — заголовок
+        while (nextLine()) {
+            if (lineStart == lineEnd) {
+                if (nextLine()) {
+                    readHistory(history);
+                }
+                break;
+            }
+            split();
+            tasks.accept(readTask());
+        }
+        return history;
+    }
+
+    private boolean nextLine() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        if (buffer == null || position >= base + buffer.limit()) {
+            fill(position);
+        }
+        while (true) {
+            int from = (int) (position - base);
+            int limit = buffer.limit();
+            int end = from;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (end < limit || base + limit == this.end) {
+                lineStart = from;
+                lineEnd = end > from && buffer.get(end - 1) == '\r' ? end - 1 : end;
+                position = base + Math.min(end + 1, limit);
+                return true;
+            }
+            if (from == 0) {
+                // строка длиннее окна
+                window *= 2;
+            }
+            fill(position);
+        }
+    }
+
+    private void fill(long offset) throws IOException {
+        int length = (int) Math.min(window, end - offset);
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length);
+        }
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Snapshot ends at offset " + (offset + buffer.position())
+                        + " while " + end + " bytes are expected");
+            }
+        }
+        buffer.flip();
+        base = offset;
+    }
+
+    private static boolean isEscaped(FileChannel channel, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(CsvFields.HEADER.length() + 2, size));
+        channel.read(header, 0);
+        String first = new String(header.array(), 0, header.position(), StandardCharsets.US_ASCII);
+        int lineBreak = first.indexOf('\n');
+        return CsvFields.isEscaped(lineBreak < 0 ? first : first.substring(0, lineBreak));
+    }
+
+    /**
+     * Offset just past the first line break at or after {@code from}, or
+     * {@code limit} if there is none before it.
+     */
+    private static long lineAfter(FileChannel channel, long from, long limit) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE);
+        long position = from;
+        while (position < limit) {
+            probe.clear();
+            probe.limit((int) Math.min(PROBE, limit - position));
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return limit;
+    }
+
+    /**
+     * Offset of the last line break before {@code to}, or {@code limit - 1}
+     * if there is none after {@code limit}.
+     */
+    private static long lineBefore(FileChannel channel, long to, long limit) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE);
+        long position = to;
+        while (position > limit) {
+            int length = (int) Math.min(PROBE, position - limit);
+            probe.clear();
+            probe.limit(length);
+            if (channel.read(probe, position - length) != length) {
+                break;
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (probe.get(i) == '\n') {
+                    return position - length + i;
+                }
+            }
+            position -= length;
+        }
+        return limit - 1;
+    }
+
+    /**
+     * Start of the blank line ending at the line break {@code lineBreak},
+     * or -1 if that line is not blank or starts before {@code limit}.
+     */
+    private static long blankLineBefore(FileChannel channel, long lineBreak, long limit) throws IOException {
+        long start = lineBreak;
+        if (start > limit && byteAt(channel, start - 1) == '\r') {
+            start--;
+        }
+        if (start < limit) {
+            return -1;
+        }
+        return start == limit || byteAt(channel, start - 1) == '\n' ? start : -1;
+    }
+
+    private static int byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(1);
+        return channel.read(probe, position) == 1 ? probe.get(0) : -1;
+    }
+
+    private void split() {
+        fields = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buffer.get(i) == ',') {
+                if (fields == fieldStart.length) {
+                    fieldStart = Arrays.copyOf(fieldStart, fields * 2);
+                    fieldEnd = Arrays.copyOf(fieldEnd, fields * 2);
+                }
+                fieldStart[fields] = start;
+                fieldEnd[fields] = i;
+                fields++;
+                start = i + 1;
+            }
+        }
+    }
+
+    private Task readTask() throws IOException {
+        if (fields < 5) {
+            throw malformed("too few fields");
+        }
+        TaskType type = TYPES[match(1, TYPE_NAMES)];
+        int timeField;
+        Task task;
+        switch (type) {
+            case TASK:
+                task = new Task(string(2), string(4));
+                timeField = 5;
+                break;
+            case EPIC:
+                task = new Epic(string(2), string(4));
+                timeField = 5;
+                break;
+            case SUBTASK:
+                task = new Subtask(string(2), string(4), number(5));
+                timeField = 6;
+                break;
+            default:
+                throw malformed("unexpected type " + type);
+        }
+        task.setId(number(0));
+        task.setTaskType(type);
+        task.setTaskStatus(STATUSES[match(3, STATUS_NAMES)]);
+        if (fields > timeField + 1) {
+            task.setStartTime(time(timeField));
+            task.setDuration(Duration.parse(slice.of(timeField + 1)));
+            if (type == TaskType.EPIC && fields > timeField + 2) {
+                ((Epic) task).setEndTime(time(timeField + 2));
+            }
+        }
+        return task;
+    }
+
+    private void readHistory(List<Integer> history) throws IOException {
+        split();
+        for (int i = 0; i < fields; i++) {
+            if (fieldStart[i] == fieldEnd[i]) {
+                continue;
+            }
+            if (!isNumber(i)) {
+                // не список id — истории нет
+                history.clear();
+                return;
+            }
+            history.add(number(i));
+        }
+    }
+
+    private boolean isNumber(int field) {
+        int i = fieldStart[field];
+        if (i < fieldEnd[field] && buffer.get(i) == '-') {
+            i++;
+        }
+        if (i == fieldEnd[field]) {
+            return false;
+        }
+        for (; i < fieldEnd[field]; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int number(int field) throws IOException {
+        if (field >= fields || !isNumber(field)) {
+            throw malformed("field " + field + " is not a number");
+        }
+        int i = fieldStart[field];
+        boolean negative = buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < fieldEnd[field]; i++) {
+            value = value * 10 + buffer.get(i) - '0';
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw malformed("field " + field + " is out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw malformed("field " + field + " is out of range");
+        }
+        return (int) value;
+    }
+
+    private String string(int field) {
+        int length = fieldEnd[field] - fieldStart[field];
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        copy(fieldStart[field], scratch, length);
+        String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        return escaped ? CsvFields.unescape(value) : value;
+    }
+
+    private void copy(int from, byte[] target, int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = buffer.get(from + i);
+        }
+    }
+
+    private int match(int field, byte[][] names) throws IOException {
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        for (int n = 0; n < names.length; n++) {
+            byte[] name = names[n];
+            if (name.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && buffer.get(start + i) == name[i]) {
+                i++;
+            }
+            if (i == length) {
+                return n;
+            }
+        }
+        throw malformed("unknown value in field " + field);
+    }
+
+    private LocalDateTime time(int field) {
+        int s = fieldStart[field];
+        if (fieldEnd[field] - s != TIME_LENGTH || buffer.get(s + 10) != ' ') {
+            return LocalDateTime.parse(slice.of(field), formatter);
+        }
+        return LocalDateTime.of(digits(s, 4), digits(s + 5, 2), digits(s + 8, 2),
+                digits(s + 11, 2), digits(s + 14, 2), digits(s + 17, 2), digits(s + 20, 6) * 1000);
+    }
+
+    private int digits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                throw new DateTimeParseException("Malformed time", slice.of(from, from + count), 0);
+            }
+            value = value * 10 + b - '0';
+        }
+        return value;
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed snapshot line at offset " + (base + lineStart) + ": " + reason);
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /**
+     * ASCII view over a part of the current window, lets the JDK parsers read
+     * a field without copying it into a String first.
+     */
+    private final class Slice implements CharSequence {
+        private int start;
+        private int end;
+
+        Slice of(int field) {
+            return of(fieldStart[field], fieldEnd[field]);
+        }
+
+        Slice of(int start, int end) {
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[end - start];
+            copy(start, bytes, bytes.length);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package service.storage;
+
+/**
+ * When journal records reach the disk. {@link #sync()} writes every change
+ * before the call returns; the other policies leave changes in memory and let
+ * a background thread write them in batches. {@link #withForce()} additionally
+ * asks the operating system to put every batch on the device.
+ */
+public final class FlushPolicy {
+    private final long intervalMillis;
+    private final int maxPendingOps;
+    private final boolean force;
+
+    private FlushPolicy(long intervalMillis, int maxPendingOps, boolean force) {
+        this.intervalMillis = intervalMillis;
+        this.maxPendingOps = maxPendingOps;
+        this.force = force;
+    }
+
+    public static FlushPolicy sync() {
+        return new FlushPolicy(0, 1, false);
+    }
+
+    public static FlushPolicy everyMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval should be positive: " + intervalMillis);
+        }
+        return new FlushPolicy(intervalMillis, Integer.MAX_VALUE, false);
+    }
+
+    public static FlushPolicy everyOps(int maxPendingOps) {
+        if (maxPendingOps <= 0) {
+            throw new IllegalArgumentException("Amount of operations should be positive: " + maxPendingOps);
+        }
+        return new FlushPolicy(0, maxPendingOps, false);
+    }
+
+    public FlushPolicy withForce() {
+        return new FlushPolicy(intervalMillis, maxPendingOps, true);
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public int getMaxPendingOps() {
+        return maxPendingOps;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    public boolean isSync() {
+        return intervalMillis == 0 && maxPendingOps == 1;
+    }
+
+    @Override
+    public String toString() {
+        return "FlushPolicy{" +
+                "intervalMillis=" + intervalMillis +
+                ", maxPendingOps=" + maxPendingOps +
+                ", force=" + force +
+                '}';
+    }
+}
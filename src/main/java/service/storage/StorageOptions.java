@@ -0,0 +1,130 @@
+package service.storage;
+
+import enums.PersistenceMode;
+import enums.SnapshotFormat;
+
+/**
+ * How a file-backed manager stores its data. Instances are immutable; start
+ * from {@link #defaults()} and change what is needed with the {@code with}
+ * methods.
+ */
+public final class StorageOptions {
+    private static final int DEFAULT_SEGMENT_SIZE = 1000;
+
+    private final PersistenceMode mode;
+    private final FlushPolicy flushPolicy;
+    private final CompactionPolicy compaction;
+    private final SnapshotFormat format;
+    private final int loadParallelism;
+    private final int segmentSize;
+    private final int idBlockSize;
+
+    private StorageOptions(PersistenceMode mode, FlushPolicy flushPolicy, CompactionPolicy compaction,
+                           SnapshotFormat format, int loadParallelism, int segmentSize, int idBlockSize) {
+        this.mode = mode;
+        this.flushPolicy = flushPolicy;
+        this.compaction = compaction;
+        this.format = format;
+        this.loadParallelism = loadParallelism;
+        this.segmentSize = segmentSize;
+        this.idBlockSize = idBlockSize;
+    }
+
+    public static StorageOptions defaults() {
+        return new StorageOptions(PersistenceMode.SNAPSHOT, FlushPolicy.sync(), CompactionPolicy.defaults(),
+                SnapshotFormat.CSV, Runtime.getRuntime().availableProcessors(), DEFAULT_SEGMENT_SIZE,
+                BlockIdAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    public StorageOptions withMode(PersistenceMode mode) {
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    public StorageOptions withFlushPolicy(FlushPolicy flushPolicy) {
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    public StorageOptions withCompaction(CompactionPolicy compaction) {
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    /**
+     * Format of snapshots written from now on; loading detects the format of
+     * an existing file by itself.
+     */
+    public StorageOptions withFormat(SnapshotFormat format) {
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    /**
+     * Number of threads parsing a large CSV snapshot on load; 1 parses it on
+     * the calling thread.
+     */
+    public StorageOptions withLoadParallelism(int loadParallelism) {
+        if (loadParallelism < 1) {
+            throw new IllegalArgumentException("Load parallelism should be positive: " + loadParallelism);
+        }
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    /**
+     * Number of ids per segment file in {@link PersistenceMode#SEGMENTED} mode.
+     */
+    public StorageOptions withSegmentSize(int segmentSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size should be positive: " + segmentSize);
+        }
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    /**
+     * Number of ids reserved at a time, see {@link BlockIdAllocator}.
+     */
+    public StorageOptions withIdBlockSize(int idBlockSize) {
+        if (idBlockSize < 1) {
+            throw new IllegalArgumentException("Block size should be positive: " + idBlockSize);
+        }
+        return new StorageOptions(mode, flushPolicy, compaction, format, loadParallelism, segmentSize, idBlockSize);
+    }
+
+    public PersistenceMode getMode() {
+        return mode;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public CompactionPolicy getCompaction() {
+        return compaction;
+    }
+
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
+    public int getLoadParallelism() {
+        return loadParallelism;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageOptions{" +
+                "mode=" + mode +
+                ", flushPolicy=" + flushPolicy +
+                ", compaction=" + compaction +
+                ", format=" + format +
+                ", loadParallelism=" + loadParallelism +
+                ", segmentSize=" + segmentSize +
+                ", idBlockSize=" + idBlockSize +
+                '}';
+    }
+}
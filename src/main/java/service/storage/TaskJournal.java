@@ -0,0 +1,495 @@
+package service.storage;
+
+import enums.TaskType;
+import exceptions.ManagerSaveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of changes made since the last snapshot, one line per record:
+ * <pre>
+ * CKP,&lt;number&gt;,escaped  checkpoint the following records start from
+ * PUT,&lt;task line&gt;       task added or changed
+ * DEL,&lt;id&gt;              task removed
+ * CLR,&lt;type&gt;            all tasks of a type removed
+ * HIST,&lt;id&gt;             task viewed
+ * </pre>
+ * A record never spans lines: line breaks in task lines are escaped, see
+ * {@link CsvFields}, and a record containing one is refused. Logs whose
+ * checkpoint lacks the {@code escaped} flag predate escaping; their task
+ * lines are converted with {@link CsvFields#fromLegacy(String)} on replay.
+ * Every line starts with the CRC32C of the record in eight hex digits and a
+ * comma. Every log starts with a checkpoint marker; its number grows by one
+ * with each snapshot the log is emptied or rotated for.
+ * <p>
+ * Every record is idempotent, so replaying a log over a snapshot that already
+ * contains some of its records gives the same state. Replay stops at the
+ * first record that is torn or fails its checksum and cuts the log there,
+ * so a crash in the middle of a write costs only the records not yet written.
+ * <p>
+ * Records are collected in memory and written by {@link #commit()} according
+ * to the {@link FlushPolicy}: at once, or in batches by a background thread.
+ */
+public class TaskJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(TaskJournal.class);
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DEL";
+    private static final String CLEAR = "CLR";
+    private static final String HISTORY = "HIST";
+    private static final String CHECKPOINT = "CKP";
+    private static final String ESCAPED = "escaped";
+    private static final int CRC_LENGTH = 8;
+
+    private final Path path;
+    private final FlushPolicy policy;
+    private FileChannel channel;
+    private final ScheduledExecutorService flusher;
+    private final StringBuilder pending = new StringBuilder();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private long appended;
+    private long written;
+    private int uncommitted;
+    private boolean flushScheduled;
+    private long records;
+    private long bytes;
+    private long checkpoint;
+    private final CRC32C crc = new CRC32C();
+
+    public interface Listener {
+        void put(String task);
+
+        void delete(int id);
+
+        void clear(TaskType type);
+
+        void touch(int id);
+    }
+
+    private static class Waiter {
+        private final long sequence;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    public TaskJournal(Path path) {
+        this(path, FlushPolicy.sync());
+    }
+
+    public TaskJournal(Path path, FlushPolicy policy) {
+        this.path = path;
+        this.policy = policy;
+        this.channel = open(path);
+        try {
+            this.bytes = channel.size();
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Ошибка открытия журнала");
+        }
+        if (bytes == 0) {
+            mark();
+        } else {
+            checkpoint = readCheckpoint(path);
+        }
+        if (policy.isSync()) {
+            flusher = null;
+        } else {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (policy.getIntervalMillis() > 0) {
+                flusher.scheduleWithFixedDelay(this::flushQuietly, policy.getIntervalMillis(),
+                        policy.getIntervalMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public synchronized void put(String task) {
+        append(PUT, task);
+    }
+
+    public synchronized void delete(int id) {
+        append(DELETE, String.valueOf(id));
+    }
+
+    public synchronized void clear(TaskType type) {
+        append(CLEAR, type.name());
+    }
+
+    /**
+     * Views are only collected: they reach the disk with the next commit or flush.
+     */
+    public synchronized void touch(int id) {
+        append(HISTORY, String.valueOf(id));
+    }
+
+    /**
+     * Marks the end of one change. With a sync policy the records are written
+     * before this returns; otherwise the background thread writes them later.
+     */
+    public synchronized void commit() {
+        uncommitted++;
+        if (policy.isSync()) {
+            flush();
+        } else if (uncommitted >= policy.getMaxPendingOps() && !flushScheduled) {
+            flushScheduled = true;
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Completes once everything appended so far has been written (and forced,
+     * if the policy says so). Asking for it starts a write without waiting for
+     * the next interval.
+     */
+    public synchronized CompletableFuture<Void> whenWritten() {
+        if (written != appended && flusher == null) {
+            flush();
+        }
+        if (written == appended) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Waiter waiter = new Waiter(appended);
+        waiters.add(waiter);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.execute(this::flushQuietly);
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Writes all collected records in one call.
+     */
+    public synchronized void flush() {
+        flushScheduled = false;
+        if (pending.length() == 0) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(pending.toString());
+            bytes += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (policy.isForce()) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            ManagerSaveException failure = new ManagerSaveException("Ошибка записи в журнал");
+            for (Waiter waiter : waiters) {
+                waiter.future.completeExceptionally(failure);
+            }
+            waiters.clear();
+            throw failure;
+        }
+        pending.setLength(0);
+        uncommitted = 0;
+        written = appended;
+        complete();
+    }
+
+    /**
+     * Drops all records once a snapshot containing them has been written.
+     */
+    public synchronized void truncate() {
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Ошибка записи в журнал");
+        }
+        pending.setLength(0);
+        uncommitted = 0;
+        written = appended;
+        records = 0;
+        bytes = 0;
+        complete();
+        mark();
+    }
+
+    /**
+     * Moves the records written so far to {@code rotated} and starts an empty
+     * log, so a snapshot can be taken while new changes keep being appended.
+     * If {@code rotated} is left over from an unfinished compaction, the
+     * records are appended to it instead.
+     */
+    public synchronized void rotate(Path rotated) {
+        flush();
+        try {
+            channel.close();
+            if (Files.exists(rotated)) {
+                try (FileChannel target = FileChannel.open(rotated, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND); FileChannel source = FileChannel.open(path)) {
+                    long position = 0;
+                    long size = source.size();
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                }
+                Files.delete(path);
+            } else {
+                Files.move(path, rotated, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            channel = open(path);
+            throw new ManagerSaveException("Ошибка ротации журнала");
+        }
+        channel = open(path);
+        records = 0;
+        bytes = 0;
+        mark();
+    }
+
+    /**
+     * Records appended since the log was last emptied.
+     */
+    public synchronized long records() {
+        return records;
+    }
+
+    /**
+     * Approximate size of the log in bytes, including records not yet written.
+     */
+    public synchronized long bytes() {
+        return bytes + pending.length();
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            flush();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Exception: ", e);
+                throw new ManagerSaveException("Ошибка записи в журнал");
+            }
+        }
+    }
+
+    /**
+     * Passes every valid record of the log to the listener and returns how
+     * many there were. A torn or corrupted tail is cut off the file.
+     */
+    public static long replay(Path path, Listener listener) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        CRC32C crc = new CRC32C();
+        long valid = 0;
+        long applied = 0;
+        long checkpoint = 0;
+        boolean checked = true;
+        boolean escaped = false;
+        String damage = null;
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] chunk = new byte[64 << 10];
+            byte[] line = new byte[256];
+            int length = 0;
+            int read;
+            records:
+            while ((read = in.read(chunk)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (chunk[i] != '\n') {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = chunk[i];
+                        continue;
+                    }
+                    if (valid == 0 && isLegacy(line, length)) {
+                        // журнал без контрольных сумм
+                        checked = false;
+                    }
+                    String record = checked ? verify(line, length, crc)
+                            : new String(line, 0, length, StandardCharsets.UTF_8);
+                    if (record == null) {
+                        damage = "checksum mismatch";
+                        break records;
+                    }
+                    if (apply(record, listener, escaped)) {
+                        applied++;
+                    } else {
+                        String[] marker = record.substring(CHECKPOINT.length() + 1).split(",");
+                        checkpoint = Long.parseLong(marker[0]);
+                        escaped = marker.length > 1 && ESCAPED.equals(marker[1]);
+                    }
+                    valid += length + 1;
+                    length = 0;
+                }
+            }
+            if (damage == null && length > 0) {
+                damage = "torn record";
+            }
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Произошла ошибка во время чтения журнала.");
+        }
+        if (damage != null) {
+            cut(path, valid, damage);
+        }
+        log.info("Журнал {}: {} записей после контрольной точки {}", path.getFileName(), applied, checkpoint);
+        return applied;
+    }
+
+    /**
+     * Returns false for a checkpoint marker, which changes nothing.
+     */
+    private static boolean apply(String record, Listener listener, boolean escaped) {
+        int comma = record.indexOf(',');
+        String type = comma < 0 ? record : record.substring(0, comma);
+        String value = comma < 0 ? "" : record.substring(comma + 1);
+        switch (type) {
+            case CHECKPOINT:
+                return false;
+            case PUT:
+                listener.put(escaped ? value : CsvFields.fromLegacy(value));
+                break;
+            case DELETE:
+                listener.delete(Integer.parseInt(value));
+                break;
+            case CLEAR:
+                listener.clear(TaskType.valueOf(value));
+                break;
+            case HISTORY:
+                listener.touch(Integer.parseInt(value));
+                break;
+            default:
+                log.info("Пропущена неизвестная запись журнала: {}", record);
+        }
+        return true;
+    }
+
+    private static String verify(byte[] line, int length, CRC32C crc) {
+        if (length <= CRC_LENGTH || line[CRC_LENGTH] != ',') {
+            return null;
+        }
+        long expected = 0;
+        for (int i = 0; i < CRC_LENGTH; i++) {
+            int digit = Character.digit(line[i], 16);
+            if (digit < 0) {
+                return null;
+            }
+            expected = expected << 4 | digit;
+        }
+        crc.reset();
+        crc.update(line, CRC_LENGTH + 1, length - CRC_LENGTH - 1);
+        if (crc.getValue() != expected) {
+            return null;
+        }
+        return new String(line, CRC_LENGTH + 1, length - CRC_LENGTH - 1, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isLegacy(byte[] line, int length) {
+        String head = new String(line, 0, Math.min(length, 5), StandardCharsets.US_ASCII);
+        return head.startsWith(PUT + ",") || head.startsWith(DELETE + ",") || head.startsWith(CLEAR + ",")
+                || head.startsWith(HISTORY + ",");
+    }
+
+    private static void cut(Path path, long valid, String damage) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            log.error("Журнал {} повреждён ({}), отброшено {} байт с позиции {}", path.getFileName(), damage,
+                    channel.size() - valid, valid);
+            channel.truncate(valid);
+            channel.force(true);
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Ошибка восстановления журнала");
+        }
+    }
+
+    private static long readCheckpoint(Path path) {
+        String marker = CHECKPOINT + ",";
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String first = reader.readLine();
+            if (first != null && first.startsWith(marker, CRC_LENGTH + 1)) {
+                return Long.parseLong(first.substring(CRC_LENGTH + 1 + marker.length()).split(",")[0]);
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.info("Контрольная точка журнала {} не прочитана: {}", path.getFileName(), e.getMessage());
+        }
+        return 0;
+    }
+
+    private void mark() {
+        checkpoint++;
+        append(CHECKPOINT, checkpoint + "," + ESCAPED);
+    }
+
+    private void append(String type, String value) {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Record should be a single line: " + value);
+        }
+        String record = type + ',' + value;
+        crc.reset();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        String checksum = Long.toHexString(crc.getValue());
+        for (int i = checksum.length(); i < CRC_LENGTH; i++) {
+            pending.append('0');
+        }
+        pending.append(checksum).append(',').append(record).append('\n');
+        appended++;
+        records++;
+    }
+
+    private static FileChannel open(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Ошибка открытия журнала");
+        }
+    }
+
+    private void complete() {
+        List<Waiter> done = new ArrayList<>();
+        waiters.removeIf(waiter -> waiter.sequence <= written && done.add(waiter));
+        for (Waiter waiter : done) {
+            waiter.future.complete(null);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (ManagerSaveException e) {
+            log.error("Фоновая запись журнала не удалась: {}", e.getMessage());
+        }
+    }
+}
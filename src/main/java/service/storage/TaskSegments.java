@@ -0,0 +1,137 @@
+package service.storage;
+
+import exceptions.ManagerSaveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.IntSet;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Layout of segmented storage: a directory with one file per range of
+ * {@code segmentSize} ids and a separate history file.
+ * <pre>
+ * &lt;file&gt;.segments/segment-0.csv      ids 0 .. segmentSize - 1
+ * &lt;file&gt;.segments/segment-1.csv      ids segmentSize .. 2 * segmentSize - 1
+ * &lt;file&gt;.segments/history.csv
+ * </pre>
+ * Every file is a snapshot of its own in the usual format, so a segment can
+ * be read or inspected on its own. Segments touched by a change are marked
+ * dirty and only they are written on the next flush.
+ */
+public class TaskSegments {
+    private static final Logger log = LoggerFactory.getLogger(TaskSegments.class);
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".csv";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final IntSet stored = new IntSet();
+    private final IntSet dirty = new IntSet();
+
+    public TaskSegments(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    public boolean exists() {
+        return Files.isDirectory(directory);
+    }
+
+    /**
+     * Segment files on disk in id order; they are remembered as stored.
+     */
+    public List<Path> list() {
+        List<Path> segments = new ArrayList<>();
+        if (!exists()) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    stored.add(number(file));
+                    segments.add(file);
+                } catch (NumberFormatException e) {
+                    log.info("Пропущен файл {}", name);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+            throw new ManagerSaveException("Произошла ошибка во время чтения сегментов.");
+        }
+        segments.sort(Comparator.comparingInt(this::number));
+        return segments;
+    }
+
+    public void markDirty(int id) {
+        dirty.add(segmentOf(id));
+    }
+
+    /**
+     * Marks every segment on disk, e.g. after all tasks of a type are removed.
+     */
+    public void markStored() {
+        stored.forEach(dirty::add);
+    }
+
+    /**
+     * Dirty segments in ascending order. A segment stays dirty until it is
+     * reported as {@link #written} or {@link #removed}.
+     */
+    public int[] dirty() {
+        int[] segments = dirty.toArray();
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    public int firstId(int segment) {
+        return segment * segmentSize;
+    }
+
+    public int lastId(int segment) {
+        return firstId(segment) + segmentSize - 1;
+    }
+
+    public Path path(int segment) {
+        return directory.resolve(PREFIX + segment + SUFFIX);
+    }
+
+    public Path historyPath() {
+        return directory.resolve("history" + SUFFIX);
+    }
+
+    public void written(int segment) {
+        stored.add(segment);
+        dirty.remove(segment);
+    }
+
+    /**
+     * Deletes the file of a segment that has no tasks left.
+     */
+    public void removed(int segment) throws IOException {
+        Files.deleteIfExists(path(segment));
+        stored.remove(segment);
+        dirty.remove(segment);
+    }
+
+    public void createDirectory() throws IOException {
+        Files.createDirectories(directory);
+    }
+
+    private int segmentOf(int id) {
+        return id / segmentSize;
+    }
+
+    private int number(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
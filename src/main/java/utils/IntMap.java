@@ -0,0 +1,294 @@
+package utils;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Open-addressing map from primitive int keys to non-null values.
+ * Entries live in dense arrays in insertion order and the hash table only
+ * stores positions in those arrays. The arrays are kept in ascending key
+ * order on every write, so reads never change the map and may run side by
+ * side: ids are normally inserted in increasing order, which appends, and an
+ * out-of-order insert shifts the entries after it, O(n) for that insert.
+ */
+public class IntMap<V> {
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private Object[] values;
+    private int[] table;
+    private int used;
+    private int size;
+    private int tombstones;
+    private int modCount;
+    private final Collection<V> valuesView = new Values();
+
+    public IntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntMap(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) - 1) << 1);
+        keys = new int[capacity];
+        values = new Object[capacity];
+        table = new int[capacity * 2];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = find(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntMap does not accept null values");
+        }
+        int index = find(key);
+        if (index >= 0) {
+            V previous = (V) values[index];
+            values[index] = value;
+            return previous;
+        }
+        if (used == keys.length) {
+            resize();
+        }
+        int position = used;
+        if (used > 0 && keys[used - 1] >= key) {
+            position = shift(key);
+        }
+        keys[position] = key;
+        values[position] = value;
+        insertSlot(key, position);
+        used++;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index >= 0 && keys[index] == key && values[index] != null) {
+                V previous = (V) values[index];
+                values[index] = null;
+                table[slot] = REMOVED;
+                tombstones++;
+                size--;
+                modCount++;
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0, used, null);
+        Arrays.fill(table, EMPTY);
+        used = 0;
+        size = 0;
+        tombstones = 0;
+        modCount++;
+    }
+
+    /**
+     * Keys in ascending order, copied so the map can be changed while they are walked.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int position = 0;
+        for (int i = 0; i < used; i++) {
+            if (values[i] != null) {
+                result[position++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    public Collection<V> values() {
+        return valuesView;
+    }
+
+    /**
+     * Up to {@code limit} values with keys greater than {@code afterKey}, in key order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> valuesAfter(int afterKey, int limit) {
+        int low = 0;
+        int high = used;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= afterKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<V> result = new ArrayList<>(Math.min(limit, size));
+        for (int i = low; i < used && result.size() < limit; i++) {
+            if (values[i] != null) {
+                result.add((V) values[i]);
+            }
+        }
+        return result;
+    }
+
+    private int find(int key) {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index >= 0 && keys[index] == key && values[index] != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int key, int index) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] > EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        if (table[slot] == REMOVED) {
+            tombstones--;
+        }
+        table[slot] = index + 1;
+    }
+
+    private void resize() {
+        int capacity = size * 2 > keys.length ? keys.length * 2 : keys.length;
+        rebuild(capacity);
+    }
+
+    /**
+     * Frees the position of {@code key} among the sorted entries by moving
+     * the entries after it one step up, and returns that position.
+     */
+    private int shift(int key) {
+        int low = 0;
+        int high = used;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = used - 1; i >= low; i--) {
+            if (values[i] != null) {
+                moveSlot(keys[i], i, i + 1);
+            }
+        }
+        System.arraycopy(keys, low, keys, low + 1, used - low);
+        System.arraycopy(values, low, values, low + 1, used - low);
+        return low;
+    }
+
+    private void moveSlot(int key, int from, int to) {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == from + 1) {
+                table[slot] = to + 1;
+                return;
+            }
+        }
+    }
+
+    private void rebuild(int capacity) {
+        long[] order = new long[size];
+        int position = 0;
+        for (int i = 0; i < used; i++) {
+            if (values[i] != null) {
+                order[position++] = ((long) keys[i] << 32) | i;
+            }
+        }
+        Arrays.sort(order);
+        int[] newKeys = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            int index = (int) order[i];
+            newKeys[i] = keys[index];
+            newValues[i] = values[index];
+        }
+        keys = newKeys;
+        values = newValues;
+        table = new int[capacity * 2];
+        used = size;
+        tombstones = 0;
+        for (int i = 0; i < used; i++) {
+            insertSlot(keys[i], i);
+        }
+        modCount++;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new Iterator<>() {
+                private int next = advance(0);
+                private final int expectedModCount = modCount;
+
+                @Override
+                public boolean hasNext() {
+                    return next < used;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public V next() {
+                    if (expectedModCount != modCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    if (next >= used) {
+                        throw new NoSuchElementException();
+                    }
+                    V value = (V) values[next];
+                    next = advance(next + 1);
+                    return value;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private int advance(int from) {
+            while (from < used && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+    }
+}
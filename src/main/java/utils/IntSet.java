@@ -0,0 +1,202 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+import java.util.function.IntConsumer;
+
+/**
+ * Open-addressing set of primitive ints that keeps insertion order.
+ * Elements are stored densely and the hash table points into the dense
+ * array, so add, remove and contains are O(1) without boxing. Removed
+ * elements are compacted away once they outnumber the live ones, and the
+ * arrays shrink with the set, so a walk costs O(size) whatever the set
+ * held before.
+ */
+public class IntSet {
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] elements;
+    private boolean[] removed;
+    private int[] table;
+    private int used;
+    private int size;
+    private volatile int[] sorted;
+
+    public IntSet() {
+        elements = new int[MIN_CAPACITY];
+        removed = new boolean[MIN_CAPACITY];
+        table = new int[MIN_CAPACITY * 2];
+    }
+
+    public IntSet(IntSet other) {
+        elements = other.elements.clone();
+        removed = other.removed.clone();
+        table = other.table.clone();
+        used = other.used;
+        size = other.size;
+        sorted = other.sorted;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int element) {
+        return find(element) >= 0;
+    }
+
+    public boolean add(int element) {
+        if (find(element) >= 0) {
+            return false;
+        }
+        if (used == elements.length) {
+            rebuild(size * 2 > elements.length ? elements.length * 2 : elements.length);
+        }
+        elements[used] = element;
+        removed[used] = false;
+        sorted = null;
+        insertSlot(element, used);
+        used++;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int element) {
+        int mask = table.length - 1;
+        for (int slot = hash(element) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index >= 0 && elements[index] == element && !removed[index]) {
+                removed[index] = true;
+                table[slot] = REMOVED;
+                sorted = null;
+                size--;
+                if (used - size > size || size * 4 < elements.length && elements.length > MIN_CAPACITY) {
+                    rebuild(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size)) << 1));
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        sorted = null;
+        used = 0;
+        size = 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < used; i++) {
+            if (!removed[i]) {
+                action.accept(elements[i]);
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        int position = 0;
+        for (int i = 0; i < used; i++) {
+            if (!removed[i]) {
+                result[position++] = elements[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Elements in ascending order. The array is kept until the set changes
+     * and shared between calls, so it must not be modified. Concurrent reads
+     * may each build it once; none of them changes the set.
+     */
+    public int[] sortedArray() {
+        int[] current = sorted;
+        if (current == null) {
+            current = toArray();
+            Arrays.sort(current);
+            sorted = current;
+        }
+        return current;
+    }
+
+    private int find(int element) {
+        int mask = table.length - 1;
+        for (int slot = hash(element) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index >= 0 && elements[index] == element && !removed[index]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int element, int index) {
+        int mask = table.length - 1;
+        int slot = hash(element) & mask;
+        while (table[slot] > EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private void rebuild(int capacity) {
+        int[] live = toArray();
+        elements = Arrays.copyOf(live, capacity);
+        removed = new boolean[capacity];
+        table = new int[capacity * 2];
+        used = live.length;
+        for (int i = 0; i < used; i++) {
+            insertSlot(elements[i], i);
+        }
+    }
+
+    private static int hash(int element) {
+        int h = element * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        IntSet other = (IntSet) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < used; i++) {
+            if (!removed[i] && !other.contains(elements[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < used; i++) {
+            if (!removed[i]) {
+                hash += elements[i];
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        forEach(element -> joiner.add(String.valueOf(element)));
+        return joiner.toString();
+    }
+}
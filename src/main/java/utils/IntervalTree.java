@@ -0,0 +1,244 @@
+package utils;
+
+import models.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Augmented AVL tree over scheduled tasks, ordered by start time and id.
+ * Every node keeps the latest end time of its subtree, so an overlap lookup
+ * only descends into branches that can still intersect the requested interval.
+ * Start and end are copied on insert, so tasks mutated in place by callers
+ * can still be removed by id.
+ */
+public class IntervalTree {
+    private Node root;
+    private final IntMap<Node> map = new IntMap<>();
+
+    private static class Node {
+        private final int key;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final Task data;
+        private LocalDateTime maxEnd;
+        private int height = 1;
+        private Node left;
+        private Node right;
+
+        Node(Task data) {
+            this.key = data.getId();
+            this.start = data.getStartTime();
+            this.end = data.getEndTime();
+            this.data = data;
+            this.maxEnd = end;
+        }
+    }
+
+    public void add(Task task) {
+        remove(task.getId());
+        if (task.getStartTime() == null || task.getEndTime() == null) {
+            return;
+        }
+        Node node = new Node(task);
+        root = insert(root, node);
+        map.put(node.key, node);
+    }
+
+    public void remove(int key) {
+        Node node = map.remove(key);
+        if (node != null) {
+            root = delete(root, node);
+        }
+    }
+
+    public boolean hasOverlap(LocalDateTime start, LocalDateTime end, int excludedKey) {
+        return start != null && end != null && hasOverlap(root, start, end, key -> key == excludedKey);
+    }
+
+    /**
+     * Checks a batch against the tree and against itself in one sweep over the
+     * batch sorted by start. Entries with {@code excludedKeys} are ignored in the
+     * tree, so a batch of updates is not compared with its own old intervals.
+     */
+    public boolean hasOverlap(List<? extends Task> batch, IntSet excludedKeys) {
+        List<Task> scheduled = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            if (task.getStartTime() != null && task.getEndTime() != null) {
+                scheduled.add(task);
+            }
+        }
+        scheduled.sort(Comparator.comparing(Task::getStartTime).thenComparing(Task::getEndTime));
+        LocalDateTime maxEnd = null;
+        for (Task task : scheduled) {
+            if (maxEnd != null && task.getStartTime().isBefore(maxEnd)) {
+                return true;
+            }
+            if (maxEnd == null || task.getEndTime().isAfter(maxEnd)) {
+                maxEnd = task.getEndTime();
+            }
+            if (hasOverlap(root, task.getStartTime(), task.getEndTime(), excludedKeys::contains)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tasks intersecting [start, end), ordered by start time. Subtrees that end
+     * before the window or start after it are skipped, so the cost is
+     * O(log n + k) for k results rather than a walk of the whole tree.
+     */
+    public List<Task> overlapping(LocalDateTime start, LocalDateTime end) {
+        List<Task> result = new ArrayList<>();
+        collect(root, start, end, result);
+        return result;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void clear() {
+        root = null;
+        map.clear();
+    }
+
+    private static boolean hasOverlap(Node node, LocalDateTime start, LocalDateTime end, IntPredicate excluded) {
+        while (node != null && node.maxEnd.isAfter(start)) {
+            if (!excluded.test(node.key) && node.start.isBefore(end) && start.isBefore(node.end)) {
+                return true;
+            }
+            if (node.left != null && node.left.maxEnd.isAfter(start)) {
+                if (hasOverlap(node.left, start, end, excluded)) {
+                    return true;
+                }
+            }
+            if (!node.start.isBefore(end)) {
+                return false;
+            }
+            node = node.right;
+        }
+        return false;
+    }
+
+    private static void collect(Node node, LocalDateTime start, LocalDateTime end, List<Task> result) {
+        while (node != null && node.maxEnd.isAfter(start)) {
+            collect(node.left, start, end, result);
+            if (!node.start.isBefore(end)) {
+                return;
+            }
+            if (start.isBefore(node.end)) {
+                result.add(node.data);
+            }
+            node = node.right;
+        }
+    }
+
+    private static int compare(Node a, Node b) {
+        int result = a.start.compareTo(b.start);
+        return result != 0 ? result : Integer.compare(a.key, b.key);
+    }
+
+    private static Node insert(Node node, Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (compare(newNode, node) < 0) {
+            node.left = insert(node.left, newNode);
+        } else {
+            node.right = insert(node.right, newNode);
+        }
+        return balance(node);
+    }
+
+    private static Node delete(Node node, Node target) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(target, node);
+        if (cmp < 0) {
+            node.left = delete(node.left, target);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, target);
+        } else {
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private static Node deleteMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static Node balance(Node node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        LocalDateTime maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+}
@@ -0,0 +1,94 @@
+package utils;
+
+import models.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Tasks ordered by start time, unscheduled tasks last, ties broken by id.
+ * The sort key is captured on insert, so a task changed in place by a caller
+ * is still found and moved by the next {@link #add(Task)}.
+ */
+public class PrioritizedIndex {
+    private final NavigableMap<Key, Task> index = new TreeMap<>();
+    private final IntMap<Key> keys = new IntMap<>();
+    private final Collection<Task> view = Collections.unmodifiableCollection(index.values());
+
+    private static final class Key implements Comparable<Key> {
+        private final LocalDateTime start;
+        private final int id;
+
+        private Key(LocalDateTime start, int id) {
+            this.start = start;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            if (start == null || o.start == null) {
+                if (start != o.start) {
+                    return start == null ? 1 : -1;
+                }
+            } else {
+                int result = start.compareTo(o.start);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(id, o.id);
+        }
+    }
+
+    public void add(Task task) {
+        Key key = new Key(task.getStartTime(), task.getId());
+        Key previous = keys.put(task.getId(), key);
+        if (previous != null) {
+            index.remove(previous);
+        }
+        index.put(key, task);
+    }
+
+    public void remove(int id) {
+        Key key = keys.remove(id);
+        if (key != null) {
+            index.remove(key);
+        }
+    }
+
+    public Collection<Task> view() {
+        return view;
+    }
+
+    /**
+     * Up to {@code limit} tasks ordered after the position ({@code afterStart},
+     * {@code afterId}), where a {@code null} start stands for an unscheduled
+     * task; a non-positive id starts from the beginning. The position does not
+     * have to belong to a task that still exists, so a page that ends with a
+     * task deleted or moved since continues where it was.
+     */
+    public List<Task> after(LocalDateTime afterStart, int afterId, int limit) {
+        Collection<Task> tail = afterId > 0 ? index.tailMap(new Key(afterStart, afterId), false).values() : view;
+        List<Task> result = new ArrayList<>(Math.min(limit, index.size()));
+        Iterator<Task> iterator = tail.iterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public void clear() {
+        index.clear();
+        keys.clear();
+    }
+}
@@ -0,0 +1,68 @@
+package utils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable list snapshot of a collection, built on first read and shared by
+ * every reader until the next change. Each change bumps the version, so a
+ * reader can tell whether what it saw before is still current.
+ * <p>
+ * The first read after a change copies the whole source, O(n); later reads
+ * until the next change are O(1). Snapshots share nothing between versions,
+ * so a burst of single-element writes, each followed by a read, costs O(n)
+ * per write. Elements are shared, not copied: the owner must never change a
+ * published element in place, but put a changed copy in its place and
+ * invalidate, as {@code InMemoryTaskManager} does with epics.
+ * <p>
+ * A snapshot is published together with the version it was built for and is
+ * only served while that version is current, so a list built before a change
+ * never outlives it. Copying the source is not safe against a change running
+ * at the same time: the owner either changes and reads from one thread or
+ * holds its lock around both, as {@code FileBackedTasksManager} does.
+ */
+public class SnapshotView<T> {
+    private final Collection<? extends T> source;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicReference<Snapshot<T>> snapshot = new AtomicReference<>();
+
+    private static final class Snapshot<T> {
+        private final long version;
+        private final List<T> list;
+
+        private Snapshot(long version, List<T> list) {
+            this.version = version;
+            this.list = list;
+        }
+    }
+
+    public SnapshotView(Collection<? extends T> source) {
+        this.source = source;
+    }
+
+    public List<T> get() {
+        Snapshot<T> current = snapshot.get();
+        long expected = version.get();
+        if (current != null && current.version == expected) {
+            return current.list;
+        }
+        List<T> list = List.copyOf(source);
+        if (version.get() == expected) {
+            snapshot.compareAndSet(current, new Snapshot<>(expected, list));
+        }
+        return list;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Elements were added, removed or replaced: the next read builds a new list.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+}
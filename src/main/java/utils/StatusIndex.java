@@ -0,0 +1,53 @@
+package utils;
+
+import enums.TaskStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Ids grouped by task status, so a status filter costs time proportional
+ * to the number of matching tasks instead of a scan of the whole store.
+ */
+public class StatusIndex {
+    private final Map<TaskStatus, IntSet> index = new EnumMap<>(TaskStatus.class);
+
+    public StatusIndex() {
+        for (TaskStatus status : TaskStatus.values()) {
+            index.put(status, new IntSet());
+        }
+    }
+
+    public void put(int id, TaskStatus status) {
+        remove(id);
+        if (status != null) {
+            index.get(status).add(id);
+        }
+    }
+
+    public void remove(int id) {
+        for (IntSet ids : index.values()) {
+            if (ids.remove(id)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ids with the given status in ascending order. The array is cached until
+     * the status changes and must not be modified.
+     */
+    public int[] ids(TaskStatus status) {
+        return index.get(status).sortedArray();
+    }
+
+    public int count(TaskStatus status) {
+        return index.get(status).size();
+    }
+
+    public void clear() {
+        for (IntSet ids : index.values()) {
+            ids.clear();
+        }
+    }
+}
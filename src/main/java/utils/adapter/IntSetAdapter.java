@@ -0,0 +1,36 @@
+package utils.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import utils.IntSet;
+
+import java.io.IOException;
+
+public class IntSetAdapter extends TypeAdapter<IntSet> {
+
+    @Override
+    public void write(final JsonWriter jsonWriter, final IntSet set) throws IOException {
+        jsonWriter.beginArray();
+        for (int element : set.toArray()) {
+            jsonWriter.value(element);
+        }
+        jsonWriter.endArray();
+    }
+
+    @Override
+    public IntSet read(final JsonReader jsonReader) throws IOException {
+        IntSet set = new IntSet();
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return set;
+        }
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            set.add(jsonReader.nextInt());
+        }
+        jsonReader.endArray();
+        return set;
+    }
+}
@@ -47,6 +47,27 @@ public class EpicTest extends TaskManagerTest<InMemoryTaskManager> {
         assertEquals(TaskStatus.NEW, savedEpic.getTaskStatus(), "Epic Status is not NEW");
     }
 
+    @Test
+    public void subtaskWithoutStatusShouldMakeEpicInProgress() {
+        Epic epic1 = new Epic("EPIC 1", "EPIC DESCRIPTION 1");
+        int epicId = manager.addEpic(epic1);
+
+        Subtask subtask1 = new Subtask("SUBTASK 1", "SUBTASK DESCRIPTION 1", epicId);
+        subtask1.setTaskStatus(null);
+        int subtaskId = manager.addSubtask(subtask1);
+        manager.addSubtask(new Subtask("SUBTASK 2", "SUBTASK DESCRIPTION 2", epicId));
+
+        assertEquals(TaskStatus.IN_PROGRESS, manager.getEpicById(epicId).getTaskStatus(),
+                "Epic Status is not IN_PROGRESS");
+
+        manager.deleteSubtaskById(subtaskId);
+
+        Epic savedEpic = (Epic) manager.getEpicById(epicId);
+
+        assertEquals(1, savedEpic.getSubtasks().size(), "Epic subtasks size is not equal to 1");
+        assertEquals(TaskStatus.NEW, savedEpic.getTaskStatus(), "Epic Status is not NEW");
+    }
+
     @Test
     public void epicWithAllDoneSubtasksShouldHaveDoneTaskStatus() {
         Epic epic1 = new Epic("EPIC 1", "EPIC DESCRIPTION 1");
@@ -241,4 +262,39 @@ public class EpicTest extends TaskManagerTest<InMemoryTaskManager> {
         assertEquals(savedSubtask1.getEndTime(), savedEpic.getEndTime(), "End time is incorrect");
         assertEquals(savedSubtask1.getDuration(), savedEpic.getDuration(), "Duration is incorrect");
     }
+
+    @Test
+    public void recalculateEpicTimeOnSubtaskUpdateAndDelete() {
+        LocalDateTime time1 = LocalDateTime.now();
+        LocalDateTime time2 = LocalDateTime.now().plusMinutes(15);
+        Duration duration1 = Duration.ofMinutes(5);
+
+        Epic epic1 = new Epic("EPIC 1", "EPIC DESCRIPTION 1");
+        int epicId = manager.addEpic(epic1);
+
+        Subtask subtask1 = new Subtask("SUBTASK 1", "SUBTASK DESCRIPTION 1", epic1.getId(), duration1, time1);
+        int subtaskId = manager.addSubtask(subtask1);
+
+        Subtask subtask2 = new Subtask("SUBTASK 2", "SUBTASK DESCRIPTION 2", epic1.getId(), duration1, time2);
+        int subtaskId2 = manager.addSubtask(subtask2);
+
+        subtask2.setDuration(Duration.ofMinutes(10));
+        manager.updateSubtask(subtask2);
+
+        Epic savedEpic = (Epic) manager.getEpicById(epicId);
+        assertEquals(time2.plusMinutes(10), savedEpic.getEndTime(), "End time is incorrect");
+        assertEquals(Duration.ofMinutes(15), savedEpic.getDuration(), "Duration is incorrect");
+
+        manager.deleteSubtaskById(subtaskId);
+
+        savedEpic = (Epic) manager.getEpicById(epicId);
+        assertEquals(time2, savedEpic.getStartTime(), "Start time is incorrect");
+        assertEquals(Duration.ofMinutes(10), savedEpic.getDuration(), "Duration is incorrect");
+
+        manager.deleteSubtaskById(subtaskId2);
+
+        savedEpic = (Epic) manager.getEpicById(epicId);
+        assertNull(savedEpic.getStartTime(), "Start time is not cleared");
+        assertEquals(TaskStatus.NEW, savedEpic.getTaskStatus(), "Epic Status is not NEW");
+    }
 }
@@ -0,0 +1,141 @@
+import enums.PersistenceMode;
+import enums.TaskStatus;
+import models.Task;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import service.manager.FileBackedTasksManager;
+import service.storage.CompactionPolicy;
+import service.storage.FlushPolicy;
+import service.storage.StorageOptions;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput and p99 latency of the file-backed manager called directly from
+ * a growing number of threads, for reads only and for one write in ten.
+ * Runs only on request:
+ * {@code mvn test -Dtest=FileBackedTasksManagerContentionTest -DloadTest=true}.
+ * Reads are a page of tasks, a time window, a task by id (which records a
+ * view) and the whole list; a write replaces a task. The journal is written
+ * behind, so the numbers are about the lock rather than the disk.
+ */
+@EnabledIfSystemProperty(named = "loadTest", matches = "true")
+class FileBackedTasksManagerContentionTest {
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int[] WRITE_PERCENT = {0, 10};
+    private static final int TASKS = 10_000;
+    private static final int OPERATIONS = 400_000;
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final Duration DURATION = Duration.ofMinutes(5);
+
+    @Test
+    void readsAndWrites() throws Exception {
+        Path path = Files.createTempFile("contention", ".csv");
+        FileBackedTasksManager manager = FileBackedTasksManager.loadFromFile(path.toString(),
+                StorageOptions.defaults()
+                        .withMode(PersistenceMode.JOURNAL)
+                        .withFlushPolicy(FlushPolicy.everyMillis(50))
+                        .withCompaction(CompactionPolicy.never()));
+        try {
+            List<Task> tasks = new ArrayList<>();
+            for (int i = 0; i < TASKS; i++) {
+                tasks.add(new Task("TASK " + i, "DESCRIPTION " + i, DURATION, START.plusMinutes(10L * i)));
+            }
+            List<Integer> ids = manager.addAll(tasks);
+            System.out.printf("%d cpus%n%8s %8s %12s %10s%n", Runtime.getRuntime().availableProcessors(),
+                    "threads", "writes %", "ops/s", "p99 us");
+            for (int writePercent : WRITE_PERCENT) {
+                for (int threads : THREADS) {
+                    load(manager, ids, threads, writePercent);
+                    long[] latencies = load(manager, ids, threads, writePercent);
+                    long elapsed = latencies[latencies.length - 1];
+                    long[] sorted = Arrays.copyOf(latencies, latencies.length - 1);
+                    Arrays.sort(sorted);
+                    System.out.printf("%8d %8d %12.0f %10.1f%n", threads, writePercent,
+                            sorted.length * 1e9 / elapsed, sorted[(int) (sorted.length * 0.99)] / 1e3);
+                }
+            }
+            assertEquals(TASKS, manager.getAllTasks().size(), "Tasks are lost");
+        } finally {
+            manager.close();
+            for (String suffix : List.of("", ".ids", ".log", ".log.1")) {
+                Files.deleteIfExists(Paths.get(path + suffix));
+            }
+        }
+    }
+
+    /**
+     * Latencies of all operations in nanoseconds, followed by the wall time of the run.
+     */
+    private long[] load(FileBackedTasksManager manager, List<Integer> ids, int threads, int writePercent)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<long[]>> jobs = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                jobs.add(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long[] latencies = new long[OPERATIONS / threads];
+                    for (int i = 0; i < latencies.length; i++) {
+                        int index = random.nextInt(ids.size());
+                        long start = System.nanoTime();
+                        if (random.nextInt(100) < writePercent) {
+                            Task task = new Task("TASK " + index, "DESCRIPTION " + i, DURATION,
+                                    START.plusMinutes(10L * index));
+                            task.setId(ids.get(index));
+                            task.setTaskStatus(TaskStatus.values()[i % TaskStatus.values().length]);
+                            manager.updateTask(task);
+                        } else {
+                            switch (i & 3) {
+                                case 0:
+                                    manager.getTasks(ids.get(index), 50);
+                                    break;
+                                case 1:
+                                    LocalDateTime from = START.plusMinutes(10L * index);
+                                    manager.getTasksBetween(from, from.plusHours(2));
+                                    break;
+                                case 2:
+                                    manager.getTaskById(ids.get(index));
+                                    break;
+                                default:
+                                    manager.getAllTasks();
+                                    break;
+                            }
+                        }
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    return latencies;
+                });
+            }
+            long start = System.nanoTime();
+            List<Future<long[]>> results = executor.invokeAll(jobs);
+            long elapsed = System.nanoTime() - start;
+            long[] all = new long[0];
+            for (Future<long[]> result : results) {
+                long[] latencies = result.get();
+                int from = all.length;
+                all = Arrays.copyOf(all, from + latencies.length);
+                System.arraycopy(latencies, 0, all, from, latencies.length);
+            }
+            all = Arrays.copyOf(all, all.length + 1);
+            all[all.length - 1] = elapsed;
+            return all;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,3 +1,7 @@
+import enums.PersistenceMode;
+import enums.SnapshotFormat;
+import enums.TaskStatus;
+import exceptions.ManagerSaveException;
 import models.Epic;
 import models.Subtask;
 import models.Task;
@@ -5,14 +9,28 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import service.manager.FileBackedTasksManager;
+import service.storage.CompactionPolicy;
+import service.storage.FlushPolicy;
+import service.storage.StorageOptions;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static service.manager.FileBackedTasksManager.loadFromFile;
 
 public class FileBackedTasksManagerTest extends TaskManagerTest<FileBackedTasksManager> {
@@ -39,8 +57,9 @@ public class FileBackedTasksManagerTest extends TaskManagerTest<FileBackedTasksM
     }
 
     @AfterEach
-    void afterEach() {
+    void afterEach() throws IOException {
         manager.createEmptyFile(path.toString());
+        Files.deleteIfExists(Paths.get(path + ".ids"));
     }
 
     @Test
@@ -85,4 +104,565 @@ public class FileBackedTasksManagerTest extends TaskManagerTest<FileBackedTasksM
         assertEquals(2, history.size(), "History size is incorrect");
     }
 
+    @Test
+    void readSnapshotWrittenByHand() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        try {
+            Files.writeString(file, "id,type,name,status,description,epic,startTime,duration,endTime\r\n"
+                    + "1,TASK,Задача,IN_PROGRESS,,2030-01-01 10:00:00.000001,PT1H30M,2030-01-01 11:30:00.000001\r\n"
+                    + "2,EPIC,Эпик,NEW,C:\\new\\dir\r\n"
+                    + "3,SUBTASK,Подзадача,DONE,описание,2\r\n"
+                    + "\r\n"
+                    + "3,1,");
+
+            FileBackedTasksManager restored = loadFromFile(file.toString());
+            Task task = restored.getAllTasks().get(0);
+
+            assertEquals("Задача", task.getName(), "Name is not read");
+            assertEquals("", task.getDescription(), "Empty description is not read");
+            assertEquals(TaskStatus.IN_PROGRESS, task.getTaskStatus(), "Status is not read");
+            assertEquals(LocalDateTime.of(2030, 1, 1, 10, 0, 0, 1000), task.getStartTime(), "Start time is not read");
+            assertEquals(Duration.ofMinutes(90), task.getDuration(), "Duration is not read");
+            assertEquals(2, restored.getAllSubtasks().get(0).getEpicId(), "Epic id is not read");
+            assertEquals("C:\\new\\dir", restored.getAllEpics().get(0).getDescription(),
+                    "Text of an old snapshot is unescaped");
+            assertEquals(TaskStatus.DONE, restored.getAllEpics().get(0).getTaskStatus(), "Epic is not rebuilt");
+            assertEquals(List.of(3, 1), restored.historyManager.getHistory().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "History is not read");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void tasksLoadedOutOfOrderAreReadInIdOrder() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        try {
+            Files.writeString(file, "id,type,name,status,description,epic,startTime,duration,endTime\n"
+                    + "5,TASK,TASK 5,NEW,\n"
+                    + "2,TASK,TASK 2,NEW,\n"
+                    + "9,TASK,TASK 9,NEW,\n"
+                    + "3,TASK,TASK 3,NEW,\n"
+                    + "\n");
+
+            FileBackedTasksManager restored = loadFromFile(file.toString());
+            restored.deleteTaskById(3);
+
+            assertEquals(List.of(2, 5, 9), restored.getAllTasks().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "Tasks are not in id order");
+            assertEquals(List.of(5, 9), restored.getTasks(2, 10).stream()
+                    .map(Task::getId).collect(Collectors.toList()), "Page is not in id order");
+            assertEquals("TASK 9", restored.getTaskById(9).getName(), "Task is not found after a shift");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void parallelLoadMatchesSequentialLoad() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        try {
+            FileBackedTasksManager large = loadFromFile(file.toString());
+            final int epicId = large.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+            LocalDateTime start = LocalDateTime.of(2030, 1, 1, 0, 0);
+            List<Task> batch = new ArrayList<>();
+            for (int i = 0; i < 40_000; i++) {
+                LocalDateTime time = start.plusMinutes(10L * i);
+                if (i % 2 == 0) {
+                    batch.add(new Task("TASK " + i, "DESCRIPTION " + i, Duration.ofMinutes(5), time));
+                } else {
+                    Subtask subtask = new Subtask("SUBTASK " + i, "SUBTASK DESCRIPTION " + i, epicId,
+                            Duration.ofMinutes(5), time);
+                    subtask.setTaskStatus(i % 3 == 0 ? TaskStatus.DONE : TaskStatus.NEW);
+                    batch.add(subtask);
+                }
+            }
+            large.addAll(batch);
+            large.getEpicById(epicId);
+            large.flush();
+            assertTrue(Files.size(file) > 2 << 20, "File is too small to be split");
+
+            FileBackedTasksManager sequential = loadFromFile(file.toString(),
+                    StorageOptions.defaults().withLoadParallelism(1));
+            FileBackedTasksManager parallel = loadFromFile(file.toString(),
+                    StorageOptions.defaults().withLoadParallelism(4));
+
+            assertEquals(sequential.getAllTasks(), parallel.getAllTasks(), "Tasks differ");
+            assertEquals(sequential.getAllSubtasks(), parallel.getAllSubtasks(), "Subtasks differ");
+            Epic epic = parallel.getAllEpics().get(0);
+            assertEquals(sequential.getAllEpics().get(0).getTaskStatus(), epic.getTaskStatus(), "Epic status differs");
+            assertEquals(20_000, parallel.getEpicSubtasks(epicId).size(), "Epic subtasks are not rebuilt");
+            assertEquals(start.plusMinutes(10), epic.getStartTime(), "Epic start is not rebuilt");
+            assertEquals(List.of(epicId), parallel.historyManager.getHistory().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "History is not read");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void snapshotIsReplacedRightAfterLoad() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            FileBackedTasksManager written = loadFromFile(file.toString());
+            List<Task> batch = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                batch.add(new Task("TASK " + i, "DESCRIPTION " + i));
+            }
+            written.addAll(batch);
+            written.flush();
+
+            // загрузка в режиме журнала сразу переписывает снимок, из которого читала
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+            final int taskId = journaled.addTask(new Task("TASK 1000", "DESCRIPTION 1000"));
+            journaled.checkpoint();
+            journaled.close();
+
+            FileBackedTasksManager restored = loadFromFile(file.toString());
+
+            assertEquals(1_001, restored.getAllTasks().size(), "Tasks are lost");
+            assertEquals("TASK 1000", restored.getTaskById(taskId).getName(), "Task is not saved");
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void binarySnapshotIsDetectedOnLoad() throws IOException {
+        Path file = Files.createTempFile("tasks", ".bin");
+        try {
+            FileBackedTasksManager binary = loadFromFile(file.toString(),
+                    StorageOptions.defaults().withFormat(SnapshotFormat.BINARY));
+            LocalDateTime start = LocalDateTime.of(2030, 1, 1, 10, 0, 0, 123_456_000);
+            final int taskId = binary.addTask(new Task("TASK 1", "ЗАДАЧА, с запятой", Duration.ofMinutes(5), start));
+            Duration centuries = Duration.ofDays(365L * 400).plusNanos(1);
+            final int longTaskId = binary.addTask(new Task("TASK 2", "DESCRIPTION 2", centuries,
+                    start.minusYears(1000)));
+            final int epicId = binary.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+            Subtask subtask = new Subtask("SUBTASK 1", "", epicId, Duration.ofMinutes(10), start.plusHours(1));
+            final int subtaskId = binary.addSubtask(subtask);
+            subtask.setTaskStatus(TaskStatus.DONE);
+            binary.updateSubtask(subtask);
+            binary.getSubtaskById(subtaskId);
+            binary.getTaskById(taskId);
+            binary.flush();
+
+            FileBackedTasksManager restored = loadFromFile(file.toString());
+            Task task = restored.getAllTasks().get(0);
+
+            assertEquals("ЗАДАЧА, с запятой", task.getDescription(), "Description is not restored");
+            assertEquals(start, task.getStartTime(), "Start time is not restored");
+            assertEquals(Duration.ofMinutes(5), task.getDuration(), "Duration is not restored");
+            assertEquals("", restored.getAllSubtasks().get(0).getDescription(), "Empty description is not restored");
+            assertEquals(TaskStatus.DONE, restored.getAllEpics().get(0).getTaskStatus(), "Epic is not rebuilt");
+            assertEquals(List.of(subtaskId, taskId), restored.historyManager.getHistory().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "History is not restored");
+            assertEquals(centuries, restored.getTaskById(longTaskId).getDuration(), "Long duration is not restored");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void corruptBinarySnapshotFailsToLoad() throws IOException {
+        Path file = Files.createTempFile("tasks", ".bin");
+        try {
+            // одна задача с неизвестным типом 9
+            Files.write(file, new byte[]{'K', 'N', 'B', 'N', 1, 1, 1, 9, 0, 0, 0, 0, 0});
+
+            assertThrows(ManagerSaveException.class, () -> loadFromFile(file.toString()),
+                    "Unknown task type is accepted");
+
+            // имя длиной 0x7FFFFFFF байт в файле из 14 байт
+            Files.write(file, new byte[]{'K', 'N', 'B', 'N', 2, 1, 1, 0, 0,
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+
+            assertThrows(ManagerSaveException.class, () -> loadFromFile(file.toString()),
+                    "Oversized string is accepted");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void replayJournalOverSnapshot() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+            final long snapshotSize = Files.size(file);
+            final int taskId = journaled.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+            final int taskId2 = journaled.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+            final int epicId = journaled.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+            Subtask subtask = new Subtask("SUBTASK 1", "SUBTASK DESCRIPTION 1", epicId);
+            final int subtaskId = journaled.addSubtask(subtask);
+            subtask.setTaskStatus(TaskStatus.DONE);
+            journaled.updateSubtask(subtask);
+            journaled.deleteTaskById(taskId);
+            journaled.getTaskById(taskId2);
+            journaled.getSubtaskById(subtaskId);
+            journaled.close();
+
+            assertEquals(snapshotSize, Files.size(file), "Snapshot is rewritten on change");
+            assertTrue(Files.size(log) > 0, "Journal is not written");
+
+            FileBackedTasksManager restored = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+
+            assertEquals(List.of(taskId2), List.of(restored.getAllTasks().get(0).getId()), "Tasks are not replayed");
+            assertEquals(TaskStatus.DONE, restored.getAllEpics().get(0).getTaskStatus(), "Epic is not rebuilt");
+            assertEquals(2, restored.historyManager.getHistory().size(), "History is not replayed");
+            assertEquals(0, Files.size(log), "Journal is not folded into snapshot on load");
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void multiLineTextSurvivesJournalAndSnapshot() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        final String description = "line 1,\nline 2\r\n\\n line 3";
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+            final int taskId = journaled.addTask(new Task("TASK, 1", description));
+            final int taskId2 = journaled.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+            journaled.close();
+
+            assertEquals(3, Files.readAllLines(log).size(), "Record is split over lines");
+
+            FileBackedTasksManager replayed = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+
+            assertEquals(List.of(taskId, taskId2), replayed.getAllTasks().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "Records after multi-line text are lost");
+            assertEquals(description, replayed.getTaskById(taskId).getDescription(), "Journal text is changed");
+            assertEquals("TASK, 1", replayed.getTaskById(taskId).getName(), "Journal name is changed");
+            replayed.close();
+
+            FileBackedTasksManager restored = loadFromFile(file.toString());
+
+            assertEquals(description, restored.getTaskById(taskId).getDescription(), "Snapshot text is changed");
+            assertEquals(2, restored.getAllTasks().size(), "Snapshot lost tasks");
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void replayTaskWithEmptyDescription() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+            final int taskId = journaled.addTask(new Task("t", ""));
+            final int epicId = journaled.addEpic(new Epic("e", ""));
+            journaled.close();
+
+            FileBackedTasksManager restored = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+
+            assertEquals("", restored.getTaskById(taskId).getDescription(), "Empty description is not replayed");
+            assertEquals("", restored.getEpicById(epicId).getDescription(), "Empty epic description is not replayed");
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void replayJournalWrittenBeforeEscaping() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            Files.writeString(log, "PUT,1,TASK,TASK 1,NEW,C:\\new\\dir\n");
+
+            FileBackedTasksManager restored = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+
+            assertEquals("C:\\new\\dir", restored.getTaskById(1).getDescription(),
+                    "Text of an old journal is unescaped");
+            restored.close();
+            assertEquals("C:\\new\\dir", loadFromFile(file.toString()).getTaskById(1).getDescription(),
+                    "Text is changed by the new snapshot");
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void recoverUpToLastValidJournalRecord() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+            final int taskId = journaled.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+            final int taskId2 = journaled.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+            journaled.addTask(new Task("TASK 3", "DESCRIPTION 3"));
+            journaled.close();
+
+            List<String> lines = Files.readAllLines(log);
+            String damaged = lines.get(3).replace("TASK 3", "TASK 9");
+            Files.writeString(log, String.join("\n", lines.subList(0, 3)) + "\n" + damaged + "\n"
+                    + "0000");
+            Files.writeString(Paths.get(file + ".tmp"), "id,type,name");
+
+            FileBackedTasksManager restored = loadFromFile(file.toString(), PersistenceMode.JOURNAL);
+
+            assertEquals(List.of(taskId, taskId2), restored.getAllTasks().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "Records are not recovered up to the damage");
+            restored.addTask(new Task("TASK 3", "DESCRIPTION 3"));
+            restored.close();
+
+            assertEquals(3, loadFromFile(file.toString(), PersistenceMode.JOURNAL).getAllTasks().size(),
+                    "Changes after recovery are lost");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".tmp"));
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void segmentedStorageRewritesTouchedSegmentsOnly() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path directory = Paths.get(file + ".segments");
+        StorageOptions options = StorageOptions.defaults().withMode(PersistenceMode.SEGMENTED).withSegmentSize(10);
+        try {
+            FileBackedTasksManager single = loadFromFile(file.toString());
+            final int epicId = single.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+            List<Task> batch = new ArrayList<>();
+            for (int i = 0; i < 28; i++) {
+                batch.add(new Task("TASK " + i, "DESCRIPTION " + i));
+            }
+            single.addAll(batch);
+
+            FileBackedTasksManager segmented = loadFromFile(file.toString(), options);
+            Path first = directory.resolve("segment-0.csv");
+            Path second = directory.resolve("segment-1.csv");
+            Path third = directory.resolve("segment-2.csv");
+            assertEquals(11, Files.readAllLines(first).size(), "File is not split into segments");
+            assertEquals(12, Files.readAllLines(third).size(), "File is not split into segments");
+
+            Files.writeString(second, Files.readString(second).replace(",TASK ", ",UNTOUCHED "));
+            Subtask subtask = new Subtask("SUBTASK 1", "SUBTASK DESCRIPTION 1", epicId);
+            subtask.setTaskStatus(TaskStatus.DONE);
+            final int subtaskId = segmented.addSubtask(subtask);
+            for (int id = 20; id < 30; id++) {
+                segmented.deleteTaskById(id);
+            }
+            segmented.getEpicById(epicId);
+            segmented.flush();
+
+            Path fourth = directory.resolve("segment-" + subtaskId / 10 + ".csv");
+            assertTrue(Files.readString(second).contains("UNTOUCHED"), "Untouched segment is rewritten");
+            assertTrue(Files.readString(first).contains("EPIC,EPIC 1,DONE"), "Epic segment is not rewritten");
+            assertTrue(Files.exists(fourth), "Segment of the new subtask is not written");
+            assertTrue(Files.notExists(third), "Empty segment is not removed");
+
+            FileBackedTasksManager restored = loadFromFile(file.toString(), options);
+
+            assertEquals(segmented.getAllTasks().size(), restored.getAllTasks().size(), "Tasks are not restored");
+            assertEquals(List.of(subtaskId), restored.getAllSubtasks().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "Subtasks are not restored");
+            assertEquals(TaskStatus.DONE, restored.getAllEpics().get(0).getTaskStatus(), "Epic is not rebuilt");
+            assertEquals(List.of(epicId), restored.historyManager.getHistory().stream()
+                    .map(Task::getId).collect(Collectors.toList()), "History is not restored");
+        } finally {
+            if (Files.exists(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path segment : files.collect(Collectors.toList())) {
+                        Files.delete(segment);
+                    }
+                }
+                Files.delete(directory);
+            }
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void idsAreNotReusedAfterRestart() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        StorageOptions options = StorageOptions.defaults().withIdBlockSize(3);
+        try {
+            FileBackedTasksManager first = loadFromFile(file.toString(), options);
+            final int taskId = first.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+            final int taskId2 = first.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+            first.deleteTaskById(taskId);
+
+            FileBackedTasksManager second = loadFromFile(file.toString(), options);
+            final int taskId3 = second.addTask(new Task("TASK 3", "DESCRIPTION 3"));
+
+            assertTrue(taskId3 > taskId2, "Id is reused after restart");
+            assertEquals("6", Files.readString(Paths.get(file + ".ids")).trim(), "Block is not reserved");
+
+            for (int i = 0; i < 3; i++) {
+                second.addTask(new Task("TASK", "DESCRIPTION"));
+            }
+
+            assertEquals("9", Files.readString(Paths.get(file + ".ids")).trim(), "Next block is not reserved");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void viewsAreSavedOnFlushOnly() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        try {
+            FileBackedTasksManager lazy = loadFromFile(file.toString());
+            final int taskId = lazy.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+            final String saved = Files.readString(file);
+            lazy.getTaskById(taskId);
+
+            assertEquals(saved, Files.readString(file), "File is rewritten on read");
+
+            lazy.close();
+
+            assertEquals(List.of(taskId), List.of(loadFromFile(file.toString()).historyManager.getHistory().get(0).getId()),
+                    "History is not saved on close");
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void writeBehindJournalIsWrittenOnSync() throws Exception {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            FileBackedTasksManager writeBehind = loadFromFile(file.toString(), StorageOptions.defaults()
+                    .withMode(PersistenceMode.JOURNAL).withFlushPolicy(FlushPolicy.everyMillis(60_000)));
+            for (int i = 0; i < 10; i++) {
+                writeBehind.addTask(new Task("TASK " + i, "DESCRIPTION " + i));
+            }
+
+            assertEquals(0, Files.size(log), "Changes should be written behind");
+
+            writeBehind.sync().get(5, TimeUnit.SECONDS);
+
+            assertEquals(11, Files.readAllLines(log).size(), "Changes are not written on sync");
+            writeBehind.close();
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void compactJournalAndRecoverRotatedLog() throws IOException {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        Path rotated = Paths.get(file + ".log.1");
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), StorageOptions.defaults()
+                    .withMode(PersistenceMode.JOURNAL).withCompaction(CompactionPolicy.never()));
+            for (int i = 0; i < 3; i++) {
+                journaled.addTask(new Task("TASK " + i, "DESCRIPTION " + i));
+            }
+            journaled.compact();
+
+            assertEquals(0, Files.size(log), "Journal is not emptied by compaction");
+            assertTrue(Files.notExists(rotated), "Rotated journal is not deleted");
+
+            journaled.addTask(new Task("TASK 3", "DESCRIPTION 3"));
+            journaled.close();
+            Files.move(log, rotated);
+
+            assertEquals(4, loadFromFile(file.toString(), PersistenceMode.JOURNAL).getAllTasks().size(),
+                    "Rotated journal is not replayed");
+        } finally {
+            Files.deleteIfExists(rotated);
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void readsRunWhileTasksAreAdded() throws Exception {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), StorageOptions.defaults()
+                    .withMode(PersistenceMode.JOURNAL).withCompaction(CompactionPolicy.never()));
+            final int epicId = journaled.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    journaled.addSubtask(new Subtask("SUBTASK " + i, "SUBTASK DESCRIPTION " + i, epicId));
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(executor.submit(() -> {
+                    int seen = 0;
+                    while (!writer.isDone()) {
+                        List<Subtask> subtasks = journaled.getAllSubtasks();
+                        assertTrue(subtasks.size() >= seen, "Snapshot goes back in time");
+                        seen = subtasks.size();
+                        journaled.getEpicById(epicId);
+                        journaled.getEpicSubtasks(epicId);
+                    }
+                }));
+            }
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(500, journaled.getEpicSubtasks(epicId).size(), "Subtasks are lost");
+            assertEquals(List.of(epicId), journaled.getHistory().stream().map(Task::getId)
+                    .collect(Collectors.toList()), "Views are lost");
+            journaled.close();
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void compactJournalInBackground() throws Exception {
+        Path file = Files.createTempFile("tasks", ".csv");
+        Path log = Paths.get(file + ".log");
+        try {
+            FileBackedTasksManager journaled = loadFromFile(file.toString(), StorageOptions.defaults()
+                    .withMode(PersistenceMode.JOURNAL).withCompaction(CompactionPolicy.of(Long.MAX_VALUE, 6).checkEvery(10)));
+            for (int i = 0; i < 6; i++) {
+                journaled.addTask(new Task("TASK " + i, "DESCRIPTION " + i));
+            }
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (journaled.getAllTasks().size() != loadFromFile(file.toString()).getAllTasks().size()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(6, loadFromFile(file.toString()).getAllTasks().size(), "Snapshot does not contain all tasks");
+            assertEquals(0, Files.size(log), "Journal is not compacted");
+            journaled.close();
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(Paths.get(file + ".ids"));
+            Files.deleteIfExists(file);
+        }
+    }
 }
@@ -115,4 +115,17 @@ public class HttpTaskManagerTest extends TaskManagerTest<HttpTaskManager> {
         assertEquals(1, history.size(), "History size is incorrect");
         assertEquals(subtaskId, history.get(0).getId(), "History elements is incorrect");
     }
-}
\ No newline at end of file
+
+    @Test
+    void viewsReachServerOnClose() {
+        manager.getTaskById(taskId);
+        manager.close();
+
+        HttpTaskManager restored = new HttpTaskManager(KV_SERVER_URL);
+        restored.loadFromServer();
+        List<Task> history = restored.historyManager.getHistory();
+
+        assertEquals(2, history.size(), "History size is incorrect");
+        assertEquals(taskId, history.get(1).getId(), "History elements is incorrect");
+    }
+}
@@ -0,0 +1,135 @@
+import enums.ExecutionMode;
+import models.Task;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import service.server.HttpTaskServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput and p99 latency of the server for a growing number of clients.
+ * Runs only on request, with TCP_NODELAY as the server is launched in production:
+ * {@code mvn test -Dtest=HttpTaskServerLoadTest -DloadTest=true -Dsun.net.httpserver.nodelay=true}.
+ * Each client reads a random task by id, every tenth request reads a page.
+ */
+@EnabledIfSystemProperty(named = "loadTest", matches = "true")
+class HttpTaskServerLoadTest {
+    private static final String TASK_SERVER_URL = "http://localhost:8080";
+    private static final int[] CLIENTS = {1, 4, 16, 64};
+    private static final int TASKS = 1000;
+    private static final int REQUESTS = 4000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void singleThread() throws Exception {
+        run(ExecutionMode.POOLED, 1);
+    }
+
+    @Test
+    void pooled() throws Exception {
+        run(ExecutionMode.POOLED, HttpTaskServer.DEFAULT_THREADS);
+    }
+
+    @Test
+    void virtual() throws Exception {
+        run(ExecutionMode.VIRTUAL, HttpTaskServer.DEFAULT_THREADS);
+    }
+
+    private void run(ExecutionMode mode, int threads) throws Exception {
+        Path path = Files.createTempFile("load", ".csv");
+        HttpTaskServer server = new HttpTaskServer(mode, threads);
+        try {
+            server.start(path.toString());
+            List<Task> tasks = new ArrayList<>();
+            for (int i = 0; i < TASKS; i++) {
+                tasks.add(new Task("TASK " + i, "DESCRIPTION " + i));
+            }
+            List<Integer> ids = server.manager.addAll(tasks);
+            HttpClient client = HttpClient.newHttpClient();
+            System.out.printf("%s, %d threads%n%8s %10s %10s%n", mode, threads, "clients", "req/s", "p99 ms");
+            for (int clients : CLIENTS) {
+                load(client, ids, clients);
+                long[] latencies = load(client, ids, clients);
+                long elapsed = latencies[latencies.length - 1];
+                long[] sorted = Arrays.copyOf(latencies, latencies.length - 1);
+                Arrays.sort(sorted);
+                System.out.printf("%8d %10.0f %10.2f%n", clients, sorted.length * 1e9 / elapsed,
+                        sorted[(int) (sorted.length * 0.99)] / 1e6);
+            }
+        } finally {
+            server.stop();
+            for (String suffix : List.of("", ".ids")) {
+                Files.deleteIfExists(Paths.get(path + suffix));
+            }
+        }
+    }
+
+    /**
+     * Latencies of all requests in nanoseconds, followed by the wall time of the run.
+     */
+    private long[] load(HttpClient client, List<Integer> ids, int clients)
+            throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Callable<long[]>> jobs = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                jobs.add(() -> {
+                    long[] latencies = new long[REQUESTS / clients];
+                    for (int i = 0; i < latencies.length; i++) {
+                        String query = i % 10 == 0
+                                ? "limit=100"
+                                : "id=" + ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        long start = System.nanoTime();
+                        HttpResponse<String> response = send(client, "/tasks/task?" + query);
+                        latencies[i] = System.nanoTime() - start;
+                        assertEquals(200, response.statusCode(), "Request failed: " + query);
+                    }
+                    return latencies;
+                });
+            }
+            long start = System.nanoTime();
+            List<Future<long[]>> results = executor.invokeAll(jobs);
+            long elapsed = System.nanoTime() - start;
+            long[] all = new long[0];
+            for (Future<long[]> result : results) {
+                long[] latencies = result.get();
+                int from = all.length;
+                all = Arrays.copyOf(all, from + latencies.length);
+                System.arraycopy(latencies, 0, all, from, latencies.length);
+            }
+            all = Arrays.copyOf(all, all.length + 1);
+            all[all.length - 1] = elapsed;
+            return all;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static HttpResponse<String> send(HttpClient client, String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + uri))
+                .timeout(TIMEOUT)
+                .GET()
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -9,20 +9,30 @@ import service.manager.FileBackedTasksManager;
 import service.server.HttpTaskServer;
 import utils.adapter.LocalDateTimeAdapter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static service.manager.FileBackedTasksManager.loadFromFile;
 
 
@@ -211,4 +221,255 @@ public class HttpTaskServerTest extends TaskManagerTest<FileBackedTasksManager>
         assertEquals(1, task.size(), "Tasks size is incorrect");
         assertEquals(subtaskId, task.get(0).getId(), "Tasks sorted incorrectly");
     }
-}
\ No newline at end of file
+
+    @Test
+    void getTasksPage() throws IOException, InterruptedException {
+        URI url = URI.create(TASK_SERVER_URL + "/tasks?limit=1");
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(url)
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Type listType = new TypeToken<ArrayList<Task>>() {
+        }.getType();
+        List<Task> page = gson.fromJson(response.body(), listType);
+        assertEquals(200, response.statusCode(), "Page has not been got");
+        assertEquals(1, page.size(), "Page size is incorrect");
+        String cursor = response.headers().firstValue("X-Next-Cursor").orElse(null);
+        assertEquals(server.manager.getTaskById(taskId).getStartTime() + "_" + taskId, cursor,
+                "Next cursor is incorrect");
+
+        server.manager.deleteTaskById(taskId);
+        url = URI.create(TASK_SERVER_URL + "/tasks?limit=1&cursor=" + cursor);
+        request = HttpRequest.newBuilder()
+                .uri(url)
+                .GET()
+                .build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        page = gson.fromJson(response.body(), listType);
+        assertEquals(subtaskId, page.get(0).getId(), "Second page is incorrect");
+    }
+
+    @Test
+    void getTasksByStatus() throws IOException, InterruptedException {
+        URI url = URI.create(TASK_SERVER_URL + "/tasks/task?status=new");
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(url)
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Type listType = new TypeToken<ArrayList<Task>>() {
+        }.getType();
+        List<Task> tasks = gson.fromJson(response.body(), listType);
+        assertEquals(200, response.statusCode(), "Tasks have not been got");
+        assertEquals(1, tasks.size(), "Tasks size is incorrect");
+        assertEquals(taskId, tasks.get(0).getId(), "Wrong task is returned");
+
+        url = URI.create(TASK_SERVER_URL + "/tasks/task?status=unknown");
+        request = HttpRequest.newBuilder()
+                .uri(url)
+                .GET()
+                .build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, response.statusCode(), "Wrong status should be rejected");
+    }
+
+    @Test
+    void addBatch() throws IOException, InterruptedException {
+        List<Task> batch = List.of(new Task("TASK 3", "DESCRIPTION 3"), new Subtask("SUBTASK 3", "DESCRIPTION 3", epicId));
+        URI url = URI.create(TASK_SERVER_URL + "/tasks/batch");
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(url)
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(batch)))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Type listType = new TypeToken<ArrayList<Integer>>() {
+        }.getType();
+        List<Integer> ids = gson.fromJson(response.body(), listType);
+        assertEquals(200, response.statusCode(), "Batch has not been added");
+        assertEquals(2, ids.size(), "Wrong amount of ids");
+        assertEquals("SUBTASK 3", server.manager.getSubtaskById(ids.get(1)).getName(), "Subtask is not added");
+    }
+
+    @Test
+    void getTasksBetween() throws IOException, InterruptedException {
+        Task task = server.manager.getTaskById(taskId);
+        URI url = URI.create(TASK_SERVER_URL + "/tasks?from=" + task.getStartTime()
+                + "&to=" + task.getEndTime());
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(url)
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Type listType = new TypeToken<ArrayList<Task>>() {
+        }.getType();
+        List<Task> tasks = gson.fromJson(response.body(), listType);
+        assertEquals(200, response.statusCode(), "Tasks have not been got");
+        assertEquals(taskId, tasks.get(0).getId(), "Wrong task is returned");
+
+        url = URI.create(TASK_SERVER_URL + "/tasks?from=" + task.getStartTime());
+        request = HttpRequest.newBuilder()
+                .uri(url)
+                .GET()
+                .build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, response.statusCode(), "Window without end should be rejected");
+    }
+
+    @Test
+    void concurrentRequestsAreServed() {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String json = gson.toJson(new Task("TASK " + i, "DESCRIPTION " + i));
+            responses.add(client.sendAsync(HttpRequest.newBuilder()
+                    .uri(URI.create(TASK_SERVER_URL + "/tasks/task"))
+                    .POST(HttpRequest.BodyPublishers.ofString(json))
+                    .build(), HttpResponse.BodyHandlers.ofString()));
+            responses.add(client.sendAsync(HttpRequest.newBuilder()
+                    .uri(URI.create(TASK_SERVER_URL + "/tasks"))
+                    .GET()
+                    .build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.join().statusCode(), "Request has failed");
+        }
+        assertEquals(101, server.manager.getAllTasks().size(), "Tasks are lost");
+    }
+
+    @Test
+    void responsesAreCompactUnlessPrettyIsAsked() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/task?id=" + taskId))
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), "Task is not returned");
+        assertFalse(response.body().contains("\n"), "Response is not compact");
+
+        request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/task?id=" + taskId + "&pretty=true"))
+                .GET()
+                .build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertTrue(response.body().contains("\n  \"id\": " + taskId), "Response is not pretty");
+        assertEquals(taskId, gson.fromJson(response.body(), Task.class).getId(), "Task id is incorrect");
+    }
+
+    @Test
+    void prettyListKeepsFieldsOfEachType() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/subtask?pretty=true"))
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), "Subtasks are not returned");
+        assertTrue(response.body().contains("\n    \"epicId\": "), "Response is not pretty");
+        Subtask[] subtasks = gson.fromJson(response.body(), Subtask[].class);
+        assertEquals(server.manager.getAllSubtasks().size(), subtasks.length, "Wrong amount of subtasks");
+    }
+
+    @Test
+    void unchangedResourcesAreNotSentAgain() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/tasks/task", null);
+        String tasksTag = response.headers().firstValue("ETag").orElseThrow();
+        assertEquals(304, get("/tasks/task", tasksTag).statusCode(), "Unchanged tasks are sent");
+        assertEquals("", get("/tasks/task", tasksTag).body(), "Body is sent with 304");
+
+        String epicTag = get("/tasks/epics?id=" + epicId, null).headers().firstValue("ETag").orElseThrow();
+        assertEquals(304, get("/tasks/epics?id=" + epicId, epicTag).statusCode(), "Unchanged epic is sent");
+        String prioritizedTag = get("/tasks", null).headers().firstValue("ETag").orElseThrow();
+
+        server.manager.addSubtask(new Subtask("SUBTASK 2", "SUBTASK DESCRIPTION 2", epicId));
+
+        assertEquals(304, get("/tasks/task", tasksTag).statusCode(), "Tasks have not changed");
+        response = get("/tasks/epics?id=" + epicId, epicTag);
+        assertEquals(200, response.statusCode(), "Changed epic is not sent");
+        assertNotEquals(epicTag, response.headers().firstValue("ETag").orElseThrow(), "Epic tag is not changed");
+        assertEquals(200, get("/tasks", prioritizedTag).statusCode(), "Changed prioritized tasks are not sent");
+    }
+
+    private HttpResponse<String> get(String uri, String etag) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + uri))
+                .GET();
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void largeResponsesAreCompressed() throws IOException, InterruptedException {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(new Task("TASK " + i, "DESCRIPTION " + i));
+        }
+        server.manager.addAll(tasks);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/task"))
+                .header("Accept-Encoding", "deflate;q=0.5, gzip")
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null), "Not compressed");
+        String json;
+        try (InputStream body = new GZIPInputStream(response.body())) {
+            json = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Type listType = new TypeToken<ArrayList<Task>>() {
+        }.getType();
+        assertEquals(101, gson.<List<Task>>fromJson(json, listType).size(), "Tasks size is incorrect");
+
+        request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/task?id=" + taskId))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+        HttpResponse<String> small = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertTrue(small.headers().firstValue("Content-Encoding").isEmpty(), "Small response is compressed");
+        assertEquals(taskId, gson.fromJson(small.body(), Task.class).getId(), "Task id is incorrect");
+    }
+
+    @Test
+    void compressedRequestBodyIsAccepted() throws IOException, InterruptedException {
+        Task task = new Task("TASK 2", "DESCRIPTION 2", Duration.ofSeconds(1), LocalDateTime.now().plusDays(3));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(body)) {
+            gzip.write(gson.toJson(task).getBytes(StandardCharsets.UTF_8));
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/task"))
+                .header("Content-Encoding", "gzip")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), "Compressed task is not created");
+        assertEquals(2, server.manager.getAllTasks().size(), "Task is not added");
+
+        request = HttpRequest.newBuilder()
+                .uri(URI.create(TASK_SERVER_URL + "/tasks/task"))
+                .header("Content-Encoding", "br")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        assertEquals(415, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode(),
+                "Unknown encoding is accepted");
+    }
+
+    @Test
+    void cachedTaskIsSentAgainAfterUpdate() throws IOException, InterruptedException {
+        Type listType = new TypeToken<ArrayList<Subtask>>() {
+        }.getType();
+        List<Subtask> subtasks = gson.fromJson(get("/tasks/subtask", null).body(), listType);
+        assertEquals("SUBTASK 1", subtasks.get(0).getName(), "Subtask is not sent");
+
+        Subtask subtask = subtasks.get(0);
+        subtask.setName("CHANGED");
+        server.manager.updateSubtask(subtask);
+
+        subtasks = gson.fromJson(get("/tasks/subtask", null).body(), listType);
+        assertEquals("CHANGED", subtasks.get(0).getName(), "Stale subtask is sent");
+        assertEquals("CHANGED", gson.fromJson(get("/tasks/subtask?id=" + subtaskId, null).body(),
+                Subtask.class).getName(), "Stale subtask is sent by id");
+        assertEquals(epicId, subtasks.get(0).getEpicId(), "Epic id is not sent");
+    }
+}
@@ -1,3 +1,4 @@
+import enums.TaskStatus;
 import exceptions.ValidateException;
 import models.Epic;
 import models.Subtask;
@@ -8,8 +9,8 @@ import service.manager.InMemoryTaskManager;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -191,6 +192,50 @@ class InMemoryTaskManagerTest extends TaskManagerTest<InMemoryTaskManager> {
         assertEquals("It is not allowed to start 2 tasks simultaneously", ex.getMessage());
     }
 
+    @Test
+    void addEnclosingTaskShouldThrowException() {
+        LocalDateTime time1 = LocalDateTime.now();
+        LocalDateTime time2 = LocalDateTime.now().minusMinutes(5);
+
+        Task task = new Task("TASK 1", "DESCRIPTION 1", Duration.ofMinutes(5), time1);
+        Task task2 = new Task("TASK 2", "DESCRIPTION 1", Duration.ofMinutes(30), time2);
+        manager.addTask(task);
+        ValidateException ex = assertThrows(
+                ValidateException.class,
+                () -> manager.addTask(task2));
+        assertEquals("It is not allowed to start 2 tasks simultaneously", ex.getMessage());
+    }
+
+    @Test
+    void updateTaskShouldNotOverlapWithItself() {
+        LocalDateTime time1 = LocalDateTime.now();
+        Duration duration1 = Duration.ofMinutes(15);
+
+        Task task = new Task("TASK 1", "DESCRIPTION 1", duration1, time1);
+        final int taskId = manager.addTask(task);
+        Task task2 = new Task("TASK 2", "DESCRIPTION 2", duration1, time1.plusMinutes(5));
+        task2.setId(taskId);
+        manager.updateTask(task2);
+
+        assertEquals(task2, manager.getTaskById(taskId), "Task is not updated");
+    }
+
+    @Test
+    void updateShouldRejectUnknownTaskOrEpic() {
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "DESCRIPTION 1"));
+        final int subtaskId = manager.addSubtask(new Subtask("SUBTASK 1", "DESCRIPTION 1", epicId));
+        Task unknown = new Task("TASK 1", "DESCRIPTION 1");
+        unknown.setId(subtaskId + 100);
+        Subtask orphan = new Subtask("SUBTASK 1", "CHANGED", epicId + 100);
+        orphan.setId(subtaskId);
+
+        assertThrows(ValidateException.class, () -> manager.updateTask(unknown), "Unknown task is inserted");
+        assertThrows(ValidateException.class, () -> manager.updateSubtask(orphan), "Unknown epic is accepted");
+        assertEquals(0, manager.getAllTasks().size(), "Unknown task is stored");
+        assertEquals("DESCRIPTION 1", manager.getSubtaskById(subtaskId).getDescription(), "Subtask is changed");
+        assertEquals(1, manager.getEpicSubtasks(epicId).size(), "Epic subtasks are changed");
+    }
+
     @Test
     void addNotOverlappedTasks() {
         int minutes = 15;
@@ -232,9 +277,213 @@ class InMemoryTaskManagerTest extends TaskManagerTest<InMemoryTaskManager> {
 
         List<Integer> result = manager.getPrioritizedTasks()
                 .stream()
-                .map(Map.Entry::getKey)
+                .map(Task::getId)
                 .collect(Collectors.toList());
 
         assertIterableEquals(expectedList, result, "Collection is not sorted properly");
     }
-}
\ No newline at end of file
+
+    @Test
+    void getPrioritizedTasksShouldKeepUnscheduledAndDropDeletedTasks() {
+        LocalDateTime time1 = LocalDateTime.now();
+        Duration duration = Duration.ofMinutes(5);
+
+        final int taskId = manager.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+        final int taskId2 = manager.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+        final int taskId3 = manager.addTask(new Task("TASK 3", "DESCRIPTION 3", duration, time1));
+        final int taskId4 = manager.addTask(new Task("TASK 4", "DESCRIPTION 4", duration, time1.plusMinutes(10)));
+
+        manager.deleteTaskById(taskId4);
+
+        List<Integer> result = manager.getPrioritizedTasks()
+                .stream()
+                .map(Task::getId)
+                .collect(Collectors.toList());
+
+        assertIterableEquals(List.of(taskId3, taskId, taskId2), result, "Collection is not sorted properly");
+    }
+
+    @Test
+    void getAllTasksShouldReuseSnapshotUntilChanged() {
+        manager.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+
+        final List<Task> tasks = manager.getAllTasks();
+        assertSame(tasks, manager.getAllTasks(), "Snapshot is rebuilt without changes");
+        assertThrows(UnsupportedOperationException.class, () -> tasks.add(new Task("TASK 2", "DESCRIPTION 2")));
+
+        manager.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+
+        assertEquals(1, tasks.size(), "Old snapshot is changed");
+        assertEquals(2, manager.getAllTasks().size(), "Wrong amount of tasks");
+    }
+
+    @Test
+    void epicInOldSnapshotShouldNotChange() {
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+        final Epic epic = manager.getAllEpics().get(0);
+
+        final Subtask subtask = new Subtask("SUBTASK 1", "SUBTASK DESCRIPTION 1", epicId);
+        subtask.setTaskStatus(TaskStatus.DONE);
+        final int subtaskId = manager.addSubtask(subtask);
+
+        assertTrue(epic.getSubtasks().isEmpty(), "Epic in old snapshot is changed");
+        assertEquals(TaskStatus.NEW, epic.getTaskStatus(), "Epic in old snapshot is changed");
+        final Epic current = manager.getAllEpics().get(0);
+        assertEquals(TaskStatus.DONE, current.getTaskStatus(), "Epic is not updated");
+        assertTrue(current.getSubtasks().contains(subtaskId), "Subtask is not added to epic");
+    }
+
+    @Test
+    void getPrioritizedTasksShouldReuseSnapshotUntilChanged() {
+        manager.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+
+        final Collection<Task> tasks = manager.getPrioritizedTasks();
+        assertSame(tasks, manager.getPrioritizedTasks(), "Snapshot is rebuilt without changes");
+
+        manager.addTask(new Task("TASK 2", "DESCRIPTION 2", Duration.ofMinutes(5), LocalDateTime.now()));
+
+        assertEquals(1, tasks.size(), "Old snapshot is changed");
+        assertEquals(2, manager.getPrioritizedTasks().size(), "Wrong amount of tasks");
+    }
+
+    @Test
+    void getTasksShouldReturnPagesAfterCursor() {
+        final int taskId = manager.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+        final int taskId2 = manager.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+        final int taskId3 = manager.addTask(new Task("TASK 3", "DESCRIPTION 3"));
+        manager.deleteTaskById(taskId2);
+
+        List<Task> firstPage = manager.getTasks(0, 1);
+        List<Task> secondPage = manager.getTasks(firstPage.get(0).getId(), 10);
+
+        assertEquals(1, firstPage.size(), "Wrong page size");
+        assertEquals(taskId, firstPage.get(0).getId(), "Wrong first page");
+        assertEquals(List.of(taskId3), secondPage.stream().map(Task::getId).collect(Collectors.toList()),
+                "Wrong second page");
+        assertEquals(2, manager.streamTasks().count(), "Wrong amount of tasks");
+    }
+
+    @Test
+    void prioritizedPagesShouldContinueAfterDeletedCursor() {
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 10, 0);
+        final int taskId = manager.addTask(new Task("TASK 1", "DESCRIPTION 1", Duration.ofMinutes(10), start));
+        final int taskId2 = manager.addTask(new Task("TASK 2", "DESCRIPTION 2",
+                Duration.ofMinutes(10), start.plusHours(1)));
+        final int taskId3 = manager.addTask(new Task("TASK 3", "DESCRIPTION 3"));
+
+        List<Task> firstPage = manager.getPrioritizedTasks(null, 0, 1);
+        manager.deleteTaskById(taskId);
+        List<Task> secondPage = manager.getPrioritizedTasks(start, taskId, 10);
+
+        assertEquals(taskId, firstPage.get(0).getId(), "Wrong first page");
+        assertEquals(List.of(taskId2, taskId3), secondPage.stream().map(Task::getId).collect(Collectors.toList()),
+                "Wrong second page");
+        assertEquals(List.of(taskId3), manager.getPrioritizedTasks(null, taskId2 - 1, 10).stream()
+                .map(Task::getId).collect(Collectors.toList()), "Wrong page after unscheduled task");
+    }
+
+    @Test
+    void epicSubtaskPagesShouldFollowChanges() {
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "DESCRIPTION 1"));
+        final int subtaskId = manager.addSubtask(new Subtask("SUBTASK 1", "DESCRIPTION 1", epicId));
+        final int subtaskId2 = manager.addSubtask(new Subtask("SUBTASK 2", "DESCRIPTION 2", epicId));
+
+        List<Subtask> firstPage = manager.getEpicSubtasks(epicId, 0, 1);
+        manager.deleteSubtaskById(subtaskId);
+        final int subtaskId3 = manager.addSubtask(new Subtask("SUBTASK 3", "DESCRIPTION 3", epicId));
+        List<Subtask> secondPage = manager.getEpicSubtasks(epicId, firstPage.get(0).getId(), 10);
+
+        assertEquals(subtaskId, firstPage.get(0).getId(), "Wrong first page");
+        assertEquals(List.of(subtaskId2, subtaskId3), secondPage.stream().map(Task::getId)
+                .collect(Collectors.toList()), "Wrong second page");
+    }
+
+    @Test
+    void getByStatusShouldFollowStatusChanges() {
+        final int taskId = manager.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+        final int taskId2 = manager.addTask(new Task("TASK 2", "DESCRIPTION 2"));
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "DESCRIPTION 1"));
+        final int subtaskId = manager.addSubtask(new Subtask("SUBTASK 1", "DESCRIPTION 1", epicId));
+
+        Task task = manager.getTaskById(taskId2);
+        task.setTaskStatus(TaskStatus.DONE);
+        manager.updateTask(task);
+        Subtask subtask = (Subtask) manager.getSubtaskById(subtaskId);
+        subtask.setTaskStatus(TaskStatus.DONE);
+        manager.updateSubtask(subtask);
+
+        assertEquals(List.of(taskId), manager.getTasksByStatus(TaskStatus.NEW).stream()
+                .map(Task::getId).collect(Collectors.toList()), "Wrong new tasks");
+        assertEquals(List.of(taskId2), manager.getTasksByStatus(TaskStatus.DONE).stream()
+                .map(Task::getId).collect(Collectors.toList()), "Wrong done tasks");
+        assertEquals(1, manager.getSubtasksByStatus(TaskStatus.DONE).size(), "Wrong done subtasks");
+        assertEquals(1, manager.getEpicsByStatus(TaskStatus.DONE).size(), "Epic status is not indexed");
+        assertTrue(manager.getEpicsByStatus(TaskStatus.NEW).isEmpty(), "Epic is left in old status");
+
+        manager.deleteSubtaskById(subtaskId);
+        manager.deleteTaskById(taskId2);
+
+        assertTrue(manager.getSubtasksByStatus(TaskStatus.DONE).isEmpty(), "Deleted subtask is indexed");
+        assertTrue(manager.getTasksByStatus(TaskStatus.DONE).isEmpty(), "Deleted task is indexed");
+        assertEquals(1, manager.getEpicsByStatus(TaskStatus.NEW).size(), "Empty epic should be new");
+    }
+
+    @Test
+    void addAllShouldRejectWholeBatchWithOverlap() {
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 10, 0);
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "DESCRIPTION 1"));
+        List<Task> batch = List.of(
+                new Task("TASK 1", "DESCRIPTION 1", Duration.ofMinutes(30), start),
+                new Subtask("SUBTASK 1", "DESCRIPTION 1", epicId, Duration.ofMinutes(30), start.plusHours(1)),
+                new Task("TASK 2", "DESCRIPTION 2", Duration.ofMinutes(30), start.plusMinutes(20)));
+
+        assertThrows(ValidateException.class, () -> manager.addAll(batch), "Overlap in batch is not found");
+        assertTrue(manager.getAllTasks().isEmpty(), "Rejected batch is partly applied");
+        assertTrue(manager.getAllSubtasks().isEmpty(), "Rejected batch is partly applied");
+    }
+
+    @Test
+    void addAllShouldAddBatchAndSyncEpicOnce() {
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 10, 0);
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "DESCRIPTION 1"));
+        Subtask subtask = new Subtask("SUBTASK 1", "DESCRIPTION 1", epicId, Duration.ofMinutes(30), start);
+        Subtask subtask2 = new Subtask("SUBTASK 2", "DESCRIPTION 2", epicId, Duration.ofMinutes(30), start.plusHours(1));
+        subtask2.setTaskStatus(TaskStatus.DONE);
+
+        List<Integer> ids = manager.addAll(List.of(new Task("TASK 1", "DESCRIPTION 1"), subtask, subtask2));
+
+        assertEquals(3, ids.size(), "Wrong amount of ids");
+        assertEquals(1, manager.getAllTasks().size(), "Task is not added");
+        Epic epic = (Epic) manager.getEpicById(epicId);
+        assertEquals(2, epic.getSubtasks().size(), "Subtasks are not linked to epic");
+        assertEquals(TaskStatus.IN_PROGRESS, epic.getTaskStatus(), "Epic status is not synced");
+        assertEquals(start.plusHours(1).plusMinutes(30), epic.getEndTime(), "Epic end time is not synced");
+
+        subtask.setStartTime(start.plusHours(1));
+        subtask2.setStartTime(start);
+        manager.updateAll(List.of(subtask, subtask2));
+
+        assertEquals(start.plusHours(1), manager.getSubtaskById(subtask.getId()).getStartTime(),
+                "Swapped subtasks should not overlap with their old intervals");
+    }
+
+    @Test
+    void getTasksBetweenShouldReturnIntersectingTasks() {
+        LocalDateTime start = LocalDateTime.of(2023, 1, 2, 9, 0);
+        final int epicId = manager.addEpic(new Epic("EPIC 1", "DESCRIPTION 1"));
+        manager.addTask(new Task("TASK 1", "DESCRIPTION 1", Duration.ofHours(2), start.minusHours(1)));
+        final int taskId2 = manager.addTask(new Task("TASK 2", "DESCRIPTION 2", Duration.ofHours(1), start.plusDays(1)));
+        final int subtaskId = manager.addSubtask(
+                new Subtask("SUBTASK 1", "DESCRIPTION 1", epicId, Duration.ofHours(1), start.plusDays(4)));
+        manager.addTask(new Task("TASK 3", "DESCRIPTION 3", Duration.ofHours(1), start.plusDays(5)));
+        manager.addTask(new Task("TASK 4", "DESCRIPTION 4"));
+
+        List<Task> window = manager.getTasksBetween(start, start.plusDays(4).plusMinutes(30));
+
+        assertEquals(3, window.size(), "Wrong amount of tasks in window");
+        assertEquals(List.of(taskId2, subtaskId), window.subList(1, 3).stream().map(Task::getId)
+                .collect(Collectors.toList()), "Tasks in window are sorted incorrectly");
+        assertTrue(manager.getTasksBetween(start.plusDays(2), start.plusDays(3)).isEmpty(),
+                "Empty window should not return tasks");
+    }
+}
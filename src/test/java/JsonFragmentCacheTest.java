@@ -0,0 +1,59 @@
+import com.google.gson.Gson;
+import enums.TaskType;
+import models.Epic;
+import models.Subtask;
+import models.Task;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import service.manager.InMemoryTaskManager;
+import service.server.JsonFragmentCache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class JsonFragmentCacheTest {
+    private InMemoryTaskManager manager;
+    private JsonFragmentCache fragments;
+    private int taskId;
+    private int epicId;
+
+    @BeforeEach
+    void beforeEach() {
+        manager = new InMemoryTaskManager();
+        fragments = new JsonFragmentCache(new Gson());
+        taskId = manager.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+        epicId = manager.addEpic(new Epic("EPIC 1", "EPIC DESCRIPTION 1"));
+        manager.addSubtask(new Subtask("SUBTASK 1", "SUBTASK DESCRIPTION 1", epicId));
+        manager.getAllTasks().forEach(task -> fragments.get(manager.getEpoch(), task));
+        manager.getAllEpics().forEach(epic -> fragments.get(manager.getEpoch(), epic));
+        manager.getAllSubtasks().forEach(subtask -> fragments.get(manager.getEpoch(), subtask));
+    }
+
+    @Test
+    void unchangedTaskIsServedFromCache() {
+        Task task = manager.getTaskById(taskId);
+
+        assertSame(fragments.get(manager.getEpoch(), task), fragments.get(manager.getEpoch(), task),
+                "Fragment is made again");
+    }
+
+    @Test
+    void removeEpicDropsItsSubtasks() {
+        fragments.removeEpic(epicId);
+
+        assertEquals(1, fragments.size(), "Epic fragments are left");
+
+        fragments.removeAll(TaskType.TASK);
+
+        assertEquals(0, fragments.size(), "Task fragments are left");
+    }
+
+    @Test
+    void newEpochDropsOldFragments() {
+        InMemoryTaskManager replaced = new InMemoryTaskManager();
+        int replacedId = replaced.addTask(new Task("TASK 1", "DESCRIPTION 1"));
+        fragments.get(replaced.getEpoch(), replaced.getTaskById(replacedId));
+
+        assertEquals(1, fragments.size(), "Fragments of the old manager are kept");
+    }
+}